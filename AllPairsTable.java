@@ -0,0 +1,182 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Lowest weight and last step of the route between every pair of nodes,
+// found by one Dijkstra per node run in parallel. A query walks back from
+// the target through the shortest path tree of the source, so it costs the
+// length of the path and nothing else. Following first steps from node to
+// node instead would mix the trees of different sources, which can go round
+// in circles where zero weights make several routes equally short. The tables take n * n * 6 bytes while the ids fit in a short and
+// n * n * 8 bytes otherwise, which limits this to maps of a few thousand
+// places.
+public class AllPairsTable<T> implements PathIndex<T> {
+
+    // Past this the tables would not fit in memory anyway.
+    public static final int MAX_NODES = 46_340;
+
+    private final Graph<T> graph;
+    private final Map<T, Integer> ids;
+    private final Object[] nodes;
+    // Row u holds, for every target, the total weight from u and the node
+    // before the target on the route from u; -1 where the target cannot be
+    // reached. Only one of the two predecessor tables is used.
+    private final int[][] distances;
+    private final short[][] shortPrevious;
+    private final int[][] intPrevious;
+    private final long buildNanos;
+
+    private AllPairsTable(Graph<T> graph, Map<T, Integer> ids, Object[] nodes, int[][] distances,
+                          short[][] shortPrevious, int[][] intPrevious, long buildNanos) {
+        this.graph = graph;
+        this.ids = ids;
+        this.nodes = nodes;
+        this.distances = distances;
+        this.shortPrevious = shortPrevious;
+        this.intPrevious = intPrevious;
+        this.buildNanos = buildNanos;
+    }
+
+    public static <T> AllPairsTable<T> build(Graph<T> graph) {
+        return build(graph, ForkJoinPool.commonPool());
+    }
+
+    public static <T> AllPairsTable<T> build(Graph<T> graph, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        CsrGraph<T> csr = new CsrGraph<>(graph);
+        int n = csr.size();
+        if(n > MAX_NODES)
+            throw new IllegalArgumentException("Too many nodes for an all-pairs table: " + n);
+
+        Map<T, Integer> ids = new HashMap<>(n * 4 / 3 + 1);
+        Object[] nodes = new Object[n];
+        for (int id = 0; id < n; id++) {
+            nodes[id] = csr.nodeAt(id);
+            ids.put(csr.nodeAt(id), id);
+        }
+
+        boolean compact = n <= Short.MAX_VALUE;
+        int[][] distances = new int[n][];
+        short[][] shortPrevious = compact ? new short[n][] : null;
+        int[][] intPrevious = compact ? null : new int[n][];
+        pool.submit(() -> IntStream.range(0, n).parallel().forEach(source -> {
+            SearchScratch scratch = SearchScratch.acquire();
+            try {
+                RowScratch row = new RowScratch(scratch, n);
+                row.search(csr, source);
+                distances[source] = row.distances(n);
+                if(compact)
+                    shortPrevious[source] = row.shortPrevious(n);
+                else
+                    intPrevious[source] = row.intPrevious(n);
+            } finally {
+                scratch.release();
+            }
+        })).join();
+        return new AllPairsTable<>(graph, ids, nodes, distances, shortPrevious, intPrevious, System.nanoTime() - start);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    // Bytes held by the distance and predecessor tables, row headers included.
+    public long getMemoryBytes() {
+        long n = nodes.length;
+        long row = 16 + 4 * n;
+        long previousRow = 16 + (shortPrevious != null ? 2 : 4) * n;
+        return n * (row + previousRow) + 2 * (16 + 4 * n);
+    }
+
+    // Lowest total weight, or -1 when there is no path.
+    public int getDistance(T from, T to) {
+        return distances[idOf(from)][idOf(to)];
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to) {
+        int source = idOf(from);
+        int target = idOf(to);
+        if(distances[source][target] < 0)
+            return null;
+
+        List<Edge<T>> path = new ArrayList<>();
+        int current = target;
+        while(current != source) {
+            int previous = shortPrevious != null ? shortPrevious[source][current] : intPrevious[source][current];
+            path.add(graph.getEdgeBetween(nodeAt(previous), nodeAt(current)));
+            current = previous;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private int idOf(T node) {
+        Integer id = ids.get(node);
+        if(id == null)
+            throw new NoSuchElementException();
+        return id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T nodeAt(int id) {
+        return (T) nodes[id];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AllPairsTable[%d nodes, %.1f MB, built in %d ms]",
+                nodes.length, getMemoryBytes() / 1e6, buildNanos / 1_000_000);
+    }
+
+    // One-to-all Dijkstra that remembers, for every node reached, the node
+    // the route comes from, in the thread's SearchScratch.
+    private static class RowScratch {
+        private final IndexedMinHeap queue;
+        private final int[] previous;
+
+        RowScratch(SearchScratch scratch, int n) {
+            queue = scratch.queue();
+            previous = scratch.previous(n);
+        }
+
+        void search(CsrGraph<?> csr, int source) {
+            queue.offer(source, 0);
+            previous[source] = source;
+            while(!queue.isEmpty()) {
+                int current = queue.poll();
+                double distance = queue.getKey(current);
+                for (int i = csr.firstEdge(current); i < csr.firstEdge(current + 1); i++) {
+                    int next = csr.target(i);
+                    if(queue.offer(next, distance + csr.weight(i)))
+                        previous[next] = current;
+                }
+            }
+        }
+
+        int[] distances(int n) {
+            int[] row = new int[n];
+            for (int v = 0; v < n; v++)
+                row[v] = queue.isRemoved(v) ? (int) Math.min(queue.getKey(v), Integer.MAX_VALUE) : -1;
+            return row;
+        }
+
+        short[] shortPrevious(int n) {
+            short[] row = new short[n];
+            for (int v = 0; v < n; v++)
+                row[v] = (short) (queue.isRemoved(v) ? previous[v] : -1);
+            return row;
+        }
+
+        int[] intPrevious(int n) {
+            int[] row = new int[n];
+            for (int v = 0; v < n; v++)
+                row[v] = queue.isRemoved(v) ? previous[v] : -1;
+            return row;
+        }
+    }
+}
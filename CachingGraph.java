@@ -0,0 +1,307 @@
+import java.util.*;
+
+// Graph that remembers the most recently used routes, up to a fixed number,
+// keyed on (from, to, mode). Edits drop the routes they can affect:
+//   disconnect, a higher weight    routes that use the connection
+//   remove                         routes through the node
+//   a lower weight                 every route that goes by weight
+//   connect                        every route
+// A new connection or a lower weight can shorten a route that passes
+// neither of its ends, so those two cannot be narrowed down to a few
+// routes. Weight changes leave the routes that ignore weights alone.
+public class CachingGraph<T> implements Graph<T> {
+
+    private static final class Route<T> {
+        final T from;
+        final T to;
+        final PathMode mode;
+        List<Edge<T>> path;
+
+        Route(T from, T to, PathMode mode) {
+            this.from = from;
+            this.to = to;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Route))
+                return false;
+            Route<?> r = (Route<?>) o;
+            return from.equals(r.from) && to.equals(r.to) && mode == r.mode;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * from.hashCode() + to.hashCode()) * 31 + mode.hashCode();
+        }
+    }
+
+    private final Graph<T> graph;
+    private final int capacity;
+    private final Map<Route<T>, List<Edge<T>>> routes;
+    private final Map<T, Set<Route<T>>> routesThrough = new HashMap<>();
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public CachingGraph(Graph<T> graph, int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException();
+        this.graph = graph;
+        this.capacity = capacity;
+        routes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Route<T>, List<Edge<T>>> eldest) {
+                if(size() <= CachingGraph.this.capacity)
+                    return false;
+                unindex(eldest.getKey(), eldest.getValue());
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    public Graph<T> getGraph() {
+        return graph;
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to) {
+        return getPath(from, to, PathMode.SHORTEST);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to, PathMode mode) {
+        Route<T> route = new Route<>(from, to, mode);
+        long seen;
+        synchronized (this) {
+            if(routes.containsKey(route)) {
+                hits++;
+                return routes.get(route);
+            }
+            misses++;
+            seen = generation;
+        }
+
+        // Search without holding the lock, the result is only kept if no
+        // edit happened in the meantime.
+        List<Edge<T>> path = graph.getPath(from, to, mode);
+        if(path != null)
+            path = Collections.unmodifiableList(new ArrayList<>(path));
+        synchronized (this) {
+            if(seen == generation && !routes.containsKey(route)) {
+                route.path = path;
+                routes.put(route, path);
+                index(route, path);
+            }
+        }
+        return path;
+    }
+
+    private void index(Route<T> route, List<Edge<T>> path) {
+        routesThrough.computeIfAbsent(route.from, n -> new HashSet<>()).add(route);
+        routesThrough.computeIfAbsent(route.to, n -> new HashSet<>()).add(route);
+        if(path == null)
+            return;
+        for (Edge<T> e : path)
+            routesThrough.computeIfAbsent(e.getDestination(), n -> new HashSet<>()).add(route);
+    }
+
+    private void unindex(Route<T> route, List<Edge<T>> path) {
+        unindex(route, route.from);
+        unindex(route, route.to);
+        if(path != null)
+            for (Edge<T> e : path)
+                unindex(route, e.getDestination());
+    }
+
+    private void unindex(Route<T> route, T node) {
+        Set<Route<T>> through = routesThrough.get(node);
+        if(through != null) {
+            through.remove(route);
+            if(through.isEmpty())
+                routesThrough.remove(node);
+        }
+    }
+
+    private void invalidate(Route<T> route) {
+        List<Edge<T>> path = routes.remove(route);
+        unindex(route, path);
+        invalidations++;
+    }
+
+    private void invalidateThrough(T node) {
+        Set<Route<T>> through = routesThrough.get(node);
+        if(through == null)
+            return;
+        for (Route<T> route : new ArrayList<>(through))
+            invalidate(route);
+    }
+
+    // Drops the routes whose path goes directly between the two nodes.
+    private void invalidateUsing(T node1, T node2, boolean weightedOnly) {
+        Set<Route<T>> through = routesThrough.get(node1);
+        if(through == null)
+            return;
+        for (Route<T> route : new ArrayList<>(through)) {
+            if(weightedOnly && ignoresWeights(route.mode))
+                continue;
+            if(route.path != null && uses(route.from, route.path, node1, node2))
+                invalidate(route);
+        }
+    }
+
+    private static boolean ignoresWeights(PathMode mode) {
+        return mode == PathMode.SHORTEST || mode == PathMode.BIDIRECTIONAL_SHORTEST;
+    }
+
+    private boolean uses(T from, List<Edge<T>> path, T node1, T node2) {
+        T previous = from;
+        for (Edge<T> e : path) {
+            T next = e.getDestination();
+            if((previous.equals(node1) && next.equals(node2)) || (previous.equals(node2) && next.equals(node1)))
+                return true;
+            previous = next;
+        }
+        return false;
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations += routes.size();
+        routes.clear();
+        routesThrough.clear();
+        generation++;
+    }
+
+    @Override
+    public void add(T node) {
+        graph.add(node);
+    }
+
+    // New connections can shorten any route, so a batch with connections
+    // drops the whole cache.
+    @Override
+    public void addAll(GraphBuilder<T> batch) {
+        graph.addAll(batch);
+        if(batch.connectionCount() > 0)
+            invalidateAll();
+    }
+
+    @Override
+    public void connect(T node1, T node2, String name, int weight) {
+        graph.connect(node1, node2, name, weight);
+        invalidateAll();
+    }
+
+    @Override
+    public void setConnectionWeight(T node1, T node2, int weight) {
+        Edge<T> edge = graph.getEdgeBetween(node1, node2);
+        int oldWeight = edge == null ? weight : edge.getWeight();
+        graph.setConnectionWeight(node1, node2, weight);
+        synchronized (this) {
+            generation++;
+            if(weight > oldWeight) {
+                invalidateUsing(node1, node2, true);
+            } else if(weight < oldWeight) {
+                for (Route<T> route : new ArrayList<>(routes.keySet()))
+                    if(!ignoresWeights(route.mode))
+                        invalidate(route);
+            }
+        }
+    }
+
+    @Override
+    public void disconnect(T node1, T node2) {
+        graph.disconnect(node1, node2);
+        synchronized (this) {
+            generation++;
+            invalidateUsing(node1, node2, false);
+        }
+    }
+
+    @Override
+    public void remove(T node) {
+        graph.remove(node);
+        synchronized (this) {
+            generation++;
+            invalidateThrough(node);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        graph.removeAll();
+        invalidateAll();
+    }
+
+    // Listeners follow the wrapped graph. They may be told about a change
+    // before the routes it affects have been dropped from the cache.
+    @Override
+    public void addListener(GraphListener<T> listener) {
+        graph.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(GraphListener<T> listener) {
+        graph.removeListener(listener);
+    }
+
+    @Override
+    public Set<T> getNodes() {
+        return graph.getNodes();
+    }
+
+    @Override
+    public Collection<Edge<T>> getEdgesFrom(T node) {
+        return graph.getEdgesFrom(node);
+    }
+
+    @Override
+    public Edge<T> getEdgeBetween(T node1, T node2) {
+        return graph.getEdgeBetween(node1, node2);
+    }
+
+    @Override
+    public boolean pathExists(T from, T to) {
+        return graph.pathExists(from, to);
+    }
+
+    @Override
+    public List<List<Edge<T>>> getPaths(T from, T to, int k) {
+        return graph.getPaths(from, to, k);
+    }
+
+    @Override
+    public int[] getWeightMatrix(List<T> origins, List<T> destinations) {
+        return graph.getWeightMatrix(origins, destinations);
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d routes cached, %d hits, %d misses, %d evictions, %d invalidations",
+                routes.size(), hits, misses, evictions, invalidations);
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Write-ahead log of the changes made to a graph of places since its last
+// snapshot. Changes are recorded in memory as the graph reports them, and
+// save() appends them to the log as one block and forces it to disk, so a
+// save costs the size of the edits rather than the size of the graph. Once
+// the log outgrows half the snapshot, save() writes a new snapshot in the
+// binary format instead and starts an empty log after it.
+//
+// The log starts with the CRC32 of the snapshot it continues. Each block is
+// its length, the records and a CRC32 of the records; a block cut short by a
+// crash fails its check and is dropped together with anything after it.
+public class ChangeLog implements GraphListener<Place>, Closeable {
+
+    public static final String EXTENSION = ".graphlog";
+
+    private static final int MAGIC = 0x4752504C;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CONNECT = 3;
+    private static final byte DISCONNECT = 4;
+    private static final byte WEIGHT = 5;
+
+    private final Graph<Place> graph;
+    private final Path snapshot;
+    private final Path log;
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private FileChannel channel;
+    private long snapshotSize;
+    private boolean cleared;
+
+    private ChangeLog(Graph<Place> graph, Path snapshot, Path log) {
+        this.graph = graph;
+        this.snapshot = snapshot;
+        this.log = log;
+    }
+
+    // Continues the log of a graph that was just restored from these files
+    // with replay. A block left half written by a crash is cut off.
+    public static ChangeLog open(Graph<Place> graph, Path snapshot, Path log) throws IOException {
+        ChangeLog changeLog = new ChangeLog(graph, snapshot, log);
+        long checksum = checksum(snapshot);
+        if(Files.exists(log)) {
+            long end = validLength(log, checksum);
+            if(end >= 0) {
+                changeLog.channel = FileChannel.open(log, StandardOpenOption.WRITE);
+                changeLog.channel.truncate(end);
+                changeLog.channel.position(end);
+            }
+        }
+        if(changeLog.channel == null)
+            changeLog.startLog(checksum);
+        changeLog.snapshotSize = Files.size(snapshot);
+        graph.addListener(changeLog);
+        return changeLog;
+    }
+
+    // Logs a graph that did not come from these files, its first save writes
+    // a snapshot.
+    public static ChangeLog create(Graph<Place> graph, Path snapshot, Path log) {
+        ChangeLog changeLog = new ChangeLog(graph, snapshot, log);
+        graph.addListener(changeLog);
+        return changeLog;
+    }
+
+    // Loads the snapshot into the graph and applies the log on top of it, if
+    // the log belongs to that snapshot. Returns the snapshot's image.
+    public static String replay(Path snapshot, Path log, Graph<Place> target) throws IOException {
+        Map<String, Place> places = new HashMap<>();
+        String[] image = new String[1];
+        // The snapshot goes into the graph as one batch, the log's edits one
+        // at a time in their order.
+        GraphBuilder<Place> batch = new GraphBuilder<>();
+        // Read into the heap, the snapshot is replaced at the next checkpoint.
+        GraphBinaryFormat.readCopy(snapshot, new GraphSink() {
+            @Override
+            public void image(String location) {
+                image[0] = location;
+            }
+
+            @Override
+            public void place(String name, double x, double y) {
+                Place place = new Place(name, x, y);
+                places.put(name, place);
+                batch.add(place);
+            }
+
+            @Override
+            public void connection(String from, String to, String name, int weight) {
+                batch.connect(places.get(from), places.get(to), name, weight);
+            }
+        });
+        target.addAll(batch);
+        if(!Files.exists(log))
+            return image[0];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            if(!readHeader(in, checksum(snapshot)))
+                return image[0];
+            byte[] block;
+            while((block = readBlock(in)) != null)
+                apply(new DataInputStream(new ByteArrayInputStream(block)), places, target);
+        }
+        return image[0];
+    }
+
+    public boolean hasPendingChanges() {
+        return pendingBytes.size() > 0 || channel == null || cleared;
+    }
+
+    // Appends the pending changes to the log, or writes a new snapshot when
+    // there is none yet, the graph was cleared or the log has grown too long.
+    public void save(String image) throws IOException {
+        if(channel == null || cleared || channel.size() + pendingBytes.size() > Math.max(MIN_COMPACT_BYTES, snapshotSize / 2)) {
+            checkpoint(image);
+            return;
+        }
+        if(pendingBytes.size() == 0)
+            return;
+
+        long start = System.nanoTime();
+        byte[] records = pendingBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(records);
+        ByteBuffer block = ByteBuffer.allocate(records.length + 8);
+        block.putInt(records.length).put(records).putInt((int) crc.getValue()).flip();
+        while(block.hasRemaining())
+            channel.write(block);
+        channel.force(false);
+        pendingBytes.reset();
+        GraphMetrics.saveFinished("append", records.length + 8, System.nanoTime() - start);
+    }
+
+    // Writes the whole graph as a new snapshot and starts an empty log after
+    // it. Both files are written aside, forced to disk and moved into place,
+    // so that a crash leaves either the old pair or the new snapshot.
+    public void checkpoint(String image) throws IOException {
+        long start = System.nanoTime();
+        GraphBinaryFormat.BinaryWriter writer = new GraphBinaryFormat.BinaryWriter();
+        GraphSink.export(image, graph, writer);
+        Path next = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        writer.writeTo(next);
+        force(next);
+        Files.move(next, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if(channel != null)
+            channel.close();
+        channel = null;
+        startLog(checksum(snapshot));
+        snapshotSize = Files.size(snapshot);
+        pendingBytes.reset();
+        cleared = false;
+        GraphMetrics.saveFinished("snapshot", snapshotSize + HEADER_BYTES, System.nanoTime() - start);
+    }
+
+    // Stops recording, changes that were not saved are dropped.
+    @Override
+    public void close() throws IOException {
+        graph.removeListener(this);
+        if(channel != null)
+            channel.close();
+        channel = null;
+    }
+
+    private void startLog(long checksum) throws IOException {
+        Path next = log.resolveSibling(log.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(next))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum);
+        }
+        force(next);
+        Files.move(next, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(log, StandardOpenOption.WRITE);
+        channel.position(HEADER_BYTES);
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void nodeAdded(Place node) {
+        try {
+            pending.writeByte(ADD);
+            pending.writeUTF(node.getName());
+            pending.writeDouble(node.getX());
+            pending.writeDouble(node.getY());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void nodeRemoved(Place node) {
+        try {
+            pending.writeByte(REMOVE);
+            pending.writeUTF(node.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void connected(Place node1, Place node2, int weight) {
+        try {
+            pending.writeByte(CONNECT);
+            pending.writeUTF(node1.getName());
+            pending.writeUTF(node2.getName());
+            pending.writeUTF(graph.getEdgeBetween(node1, node2).getName());
+            pending.writeInt(weight);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void disconnected(Place node1, Place node2, int weight) {
+        try {
+            pending.writeByte(DISCONNECT);
+            pending.writeUTF(node1.getName());
+            pending.writeUTF(node2.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void weightChanged(Place node1, Place node2, int oldWeight, int newWeight) {
+        try {
+            pending.writeByte(WEIGHT);
+            pending.writeUTF(node1.getName());
+            pending.writeUTF(node2.getName());
+            pending.writeInt(newWeight);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Nothing logged before this matters any more, the next save writes a
+    // snapshot.
+    @Override
+    public void cleared() {
+        pendingBytes.reset();
+        cleared = true;
+    }
+
+    private static void apply(DataInputStream in, Map<String, Place> places, Graph<Place> target) throws IOException {
+        while(in.available() > 0) {
+            byte type = in.readByte();
+            switch (type) {
+                case ADD:
+                    Place place = new Place(in.readUTF(), in.readDouble(), in.readDouble());
+                    places.put(place.getName(), place);
+                    target.add(place);
+                    break;
+                case REMOVE:
+                    target.remove(places.remove(in.readUTF()));
+                    break;
+                case CONNECT:
+                    Place from = places.get(in.readUTF());
+                    Place to = places.get(in.readUTF());
+                    target.connect(from, to, in.readUTF(), in.readInt());
+                    break;
+                case DISCONNECT:
+                    target.disconnect(places.get(in.readUTF()), places.get(in.readUTF()));
+                    break;
+                case WEIGHT:
+                    target.setConnectionWeight(places.get(in.readUTF()), places.get(in.readUTF()), in.readInt());
+                    break;
+                default:
+                    throw new IOException("Unknown change log record " + type);
+            }
+        }
+    }
+
+    private static boolean readHeader(DataInputStream in, long checksum) throws IOException {
+        try {
+            return in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == checksum;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // The next complete block, or null at the end of the log or at a block
+    // that was not completely written.
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if(length < 0 || length > in.available())
+                return null;
+            byte[] records = new byte[length];
+            in.readFully(records);
+            CRC32 crc = new CRC32();
+            crc.update(records);
+            return in.readInt() == (int) crc.getValue() ? records : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Length of the log up to the end of its last complete block, or -1 if it
+    // does not continue the snapshot with this checksum.
+    private static long validLength(Path log, long checksum) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            if(!readHeader(in, checksum))
+                return -1;
+            long length = HEADER_BYTES;
+            byte[] block;
+            while((block = readBlock(in)) != null)
+                length += block.length + 8;
+            return length;
+        }
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while((read = in.read(buffer)) > 0)
+                crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeLog[" + log + ", " + pendingBytes.size() + " bytes pending]";
+    }
+}
@@ -0,0 +1,279 @@
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Graph that can be queried from any number of threads while it is edited.
+// The graph is published as an immutable version behind a volatile field:
+// reads take the current version once and never lock, writes are serialized
+// and copy on write. The map of nodes is a ShardedMap, so a write copies the
+// shards and edge maps of the nodes it touches, which is about the square
+// root of the number of nodes rather than all of them; everything else,
+// including all other Edge objects, is shared with the previous version.
+// Edges handed out must not be changed.
+// Listeners are called by the writing thread, holding the write lock, once
+// the change has been published.
+public class ConcurrentGraph<T> implements Graph<T> {
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile ListGraph<T> current = new ListGraph<>(ShardedMap.empty(), null, EuclideanHeuristic.Scale.EMPTY);
+    private final List<GraphListener<T>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void add(T node) {
+        writeLock.lock();
+        try {
+            if(current.adjacency().containsKey(node))
+                return;
+            ShardedMap<T, Map<T, Edge<T>>>.Editor next = nodes().edit();
+            next.put(node, Collections.emptyMap());
+            publish(next, current.scale());
+            for (GraphListener<T> listener : listeners)
+                listener.nodeAdded(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // The whole batch goes in one version: every shard of nodes it reaches is
+    // copied once, and so is the edge map of every node the batch connects.
+    @Override
+    public void addAll(GraphBuilder<T> batch) {
+        writeLock.lock();
+        try {
+            batch.check(nodes().keySet());
+            ShardedMap<T, Map<T, Edge<T>>>.Editor next = nodes().edit();
+            List<T> added = new ArrayList<>();
+            for (T node : batch.nodes()) {
+                if(!next.containsKey(node)) {
+                    next.put(node, new HashMap<>());
+                    added.add(node);
+                }
+            }
+            Set<T> copied = new HashSet<>(added);
+            int[] connected = new int[batch.connectionCount()];
+            int count = 0;
+            for (int i = 0; i < batch.connectionCount(); i++) {
+                T node1 = batch.from(i);
+                T node2 = batch.to(i);
+                if(next.get(node1).containsKey(node2))
+                    continue;
+                editable(next, copied, node1).put(node2, new Edge<>(node2, batch.name(i), batch.weight(i)));
+                editable(next, copied, node2).put(node1, new Edge<>(node1, batch.name(i), batch.weight(i)));
+                connected[count++] = i;
+            }
+            if(added.isEmpty() && count == 0)
+                return;
+
+            EuclideanHeuristic.Scale scale = current.scale();
+            for (int j = 0; j < count; j++)
+                scale = scale.connected(batch.from(connected[j]), batch.to(connected[j]), batch.weight(connected[j]));
+            publish(next, scale);
+            for (GraphListener<T> listener : listeners) {
+                for (T node : added)
+                    listener.nodeAdded(node);
+                for (int j = 0; j < count; j++)
+                    listener.connected(batch.from(connected[j]), batch.to(connected[j]), batch.weight(connected[j]));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void connect(T node1, T node2, String name, int weight) {
+        if(weight<0)
+            throw new IllegalArgumentException();
+
+        writeLock.lock();
+        try {
+            if(current.getEdgeBetween(node1, node2) != null)
+                throw new IllegalStateException();
+            ShardedMap<T, Map<T, Edge<T>>>.Editor next = nodes().edit();
+            put(next, node1, new Edge<>(node2, name, weight));
+            put(next, node2, new Edge<>(node1, name, weight));
+            publish(next, current.scale().connected(node1, node2, weight));
+            for (GraphListener<T> listener : listeners)
+                listener.connected(node1, node2, weight);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void setConnectionWeight(T node1, T node2, int weight) {
+        if(weight<0)
+            throw new IllegalArgumentException();
+
+        writeLock.lock();
+        try {
+            Edge<T> edge = current.getEdgeBetween(node1, node2);
+            if(edge == null)
+                throw new IllegalStateException();
+            ShardedMap<T, Map<T, Edge<T>>>.Editor next = nodes().edit();
+            put(next, node1, new Edge<>(node2, edge.getName(), weight));
+            put(next, node2, new Edge<>(node1, edge.getName(), weight));
+            publish(next, current.scale().weightChanged(node1, node2, edge.getWeight(), weight));
+            for (GraphListener<T> listener : listeners)
+                listener.weightChanged(node1, node2, edge.getWeight(), weight);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void disconnect(T node1, T node2) {
+        writeLock.lock();
+        try {
+            Edge<T> edge = current.getEdgeBetween(node1, node2);
+            if(edge == null)
+                throw new IllegalStateException();
+            ShardedMap<T, Map<T, Edge<T>>>.Editor next = nodes().edit();
+            delete(next, node1, node2);
+            delete(next, node2, node1);
+            publish(next, current.scale().disconnected(node1, node2));
+            for (GraphListener<T> listener : listeners)
+                listener.disconnected(node1, node2, edge.getWeight());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(T node) {
+        writeLock.lock();
+        try {
+            Map<T, Edge<T>> edges = current.adjacency().get(node);
+            if(edges == null)
+                throw new NoSuchElementException();
+            // With listeners each connection goes in a version of its own.
+            if(!listeners.isEmpty()) {
+                for (T d : edges.keySet())
+                    disconnect(node, d);
+                edges = current.adjacency().get(node);
+            }
+            ShardedMap<T, Map<T, Edge<T>>>.Editor next = nodes().edit();
+            for (T d : edges.keySet())
+                if(!d.equals(node))
+                    delete(next, d, node);
+            next.remove(node);
+            publish(next, current.scale().removed(node));
+            for (GraphListener<T> listener : listeners)
+                listener.nodeRemoved(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        writeLock.lock();
+        try {
+            publish(ShardedMap.<T, Map<T, Edge<T>>>empty().edit(), EuclideanHeuristic.Scale.EMPTY);
+            for (GraphListener<T> listener : listeners)
+                listener.cleared();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void setHeuristic(Heuristic<T> heuristic) {
+        Objects.requireNonNull(heuristic);
+        writeLock.lock();
+        try {
+            current = new ListGraph<>(current.adjacency(), heuristic, current.scale());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void addListener(GraphListener<T> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    @Override
+    public void removeListener(GraphListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    private ShardedMap<T, Map<T, Edge<T>>> nodes() {
+        return (ShardedMap<T, Map<T, Edge<T>>>) current.adjacency();
+    }
+
+    private void put(ShardedMap<T, Map<T, Edge<T>>>.Editor next, T node, Edge<T> edge) {
+        Map<T, Edge<T>> edges = new HashMap<>(next.get(node));
+        edges.put(edge.getDestination(), edge);
+        next.put(node, edges);
+    }
+
+    // The node's edge map in the next version, copied the first time it is
+    // asked for.
+    private Map<T, Edge<T>> editable(ShardedMap<T, Map<T, Edge<T>>>.Editor next, Set<T> copied, T node) {
+        if(copied.add(node))
+            next.put(node, new HashMap<>(next.get(node)));
+        return next.get(node);
+    }
+
+    private void delete(ShardedMap<T, Map<T, Edge<T>>>.Editor next, T node, T destination) {
+        Map<T, Edge<T>> edges = new HashMap<>(next.get(node));
+        edges.remove(destination);
+        next.put(node, edges);
+    }
+
+    // The admissible scale of the new version is carried on from the last
+    // one, so that A* does not scan every edge again after each write.
+    private void publish(ShardedMap<T, Map<T, Edge<T>>>.Editor next, EuclideanHeuristic.Scale scale) {
+        current = new ListGraph<>(next.build(), current.chosenHeuristic(), scale);
+    }
+
+    // The current version, for copies that must see a single one. It is
+    // never changed, and must not be changed by the caller either.
+    ListGraph<T> version() {
+        return current;
+    }
+
+    @Override
+    public Set<T> getNodes() {
+        return current.getNodes();
+    }
+
+    @Override
+    public Collection<Edge<T>> getEdgesFrom(T node) {
+        return current.getEdgesFrom(node);
+    }
+
+    @Override
+    public Edge<T> getEdgeBetween(T node1, T node2) {
+        return current.getEdgeBetween(node1, node2);
+    }
+
+    @Override
+    public boolean pathExists(T from, T to) {
+        return current.pathExists(from, to);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to) {
+        return current.getPath(from, to);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to, PathMode mode) {
+        return current.getPath(from, to, mode);
+    }
+
+    @Override
+    public List<List<Edge<T>>> getPaths(T from, T to, int k) {
+        return current.getPaths(from, to, k);
+    }
+
+    @Override
+    public int[] getWeightMatrix(List<T> origins, List<T> destinations) {
+        return current.getWeightMatrix(origins, destinations);
+    }
+
+    @Override
+    public String toString(){
+        return current.toString();
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Union-find over the nodes of a graph. Joining components is cheap, splitting
+// them is not supported, so the owner marks the index stale on disconnect or
+// remove and it is rebuilt from the graph on the next query.
+class ConnectivityIndex<T> {
+
+    private final Map<T, Integer> ids = new HashMap<>();
+    private int[] parent = new int[16];
+    private byte[] rank = new byte[16];
+    private boolean stale;
+
+    void add(T node) {
+        if(stale || ids.containsKey(node))
+            return;
+        int id = ids.size();
+        if(id == parent.length) {
+            parent = Arrays.copyOf(parent, id * 2);
+            rank = Arrays.copyOf(rank, id * 2);
+        }
+        parent[id] = id;
+        rank[id] = 0;
+        ids.put(node, id);
+    }
+
+    void union(T node1, T node2) {
+        if(stale)
+            return;
+        int root1 = find(ids.get(node1));
+        int root2 = find(ids.get(node2));
+        if(root1 == root2)
+            return;
+        if(rank[root1] < rank[root2]) {
+            parent[root1] = root2;
+        } else if(rank[root1] > rank[root2]) {
+            parent[root2] = root1;
+        } else {
+            parent[root2] = root1;
+            rank[root1]++;
+        }
+    }
+
+    boolean connected(T node1, T node2) {
+        Integer id1 = ids.get(node1);
+        Integer id2 = ids.get(node2);
+        return id1 != null && id2 != null && find(id1) == find(id2);
+    }
+
+    boolean isStale() {
+        return stale;
+    }
+
+    void invalidate() {
+        stale = true;
+    }
+
+    void rebuild(Map<T, ? extends Map<T, ?>> adjacency) {
+        clear();
+        for (T node : adjacency.keySet())
+            add(node);
+        for (Map.Entry<T, ? extends Map<T, ?>> entry : adjacency.entrySet())
+            for (T destination : entry.getValue().keySet())
+                union(entry.getKey(), destination);
+    }
+
+    void clear() {
+        ids.clear();
+        stale = false;
+    }
+
+    // Find with path halving.
+    private int find(int id) {
+        while(parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+}
@@ -0,0 +1,640 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Contraction hierarchy over a graph. Nodes are contracted one after another
+// by importance; contracting a node adds a shortcut between two of its
+// neighbours whenever the path through it may be the only shortest one. A
+// query then runs Dijkstra from both ends, only ever moving to more
+// important nodes, and unpacks the shortcuts back into the graph's edges.
+//
+// Contraction runs in rounds: each round picks the nodes that are less
+// important than all of their neighbours and finds their shortcuts in
+// parallel. The index describes the graph as it was when it was built.
+public class ContractionHierarchy<T extends Vertex> implements PathIndex<T> {
+
+    private static final int MAGIC = 0x43484958;
+    private static final int VERSION = 1;
+    // Nodes a witness search may settle when contracting, and when only
+    // estimating how many shortcuts a contraction would add.
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int ESTIMATE_SETTLE_LIMIT = 10;
+
+    private final Graph<T> graph;
+    private final Map<T, Integer> ids;
+    private final Object[] nodes;
+    private final int[] rank;
+    private final long fingerprint;
+
+    // Edges to more important nodes only, rows sorted by target. A middle of
+    // -1 is an edge of the graph, otherwise the node the shortcut skips.
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final int[] upWeights;
+    private final int[] upMiddles;
+
+
+    private ContractionHierarchy(Graph<T> graph, Map<T, Integer> ids, Object[] nodes, int[] rank, long fingerprint,
+                                 int[] upOffsets, int[] upTargets, int[] upWeights, int[] upMiddles) {
+        this.graph = graph;
+        this.ids = ids;
+        this.nodes = nodes;
+        this.rank = rank;
+        this.fingerprint = fingerprint;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upWeights = upWeights;
+        this.upMiddles = upMiddles;
+    }
+
+    public static <T extends Vertex> ContractionHierarchy<T> build(Graph<T> graph) {
+        return build(graph, ForkJoinPool.commonPool());
+    }
+
+    // The index is built from, and unpacks its paths against, a frozen copy
+    // of the graph, so later edits of the graph do not reach it.
+    public static <T extends Vertex> ContractionHierarchy<T> build(Graph<T> graph, ForkJoinPool pool) {
+        CsrGraph<T> csr = graph instanceof CsrGraph ? (CsrGraph<T>) graph : new CsrGraph<>(graph);
+        int n = csr.size();
+        Map<T, Integer> ids = new HashMap<>(n * 4 / 3 + 1);
+        Object[] nodes = new Object[n];
+        for (int id = 0; id < n; id++) {
+            nodes[id] = csr.nodeAt(id);
+            ids.put(csr.nodeAt(id), id);
+        }
+
+        Contractor contractor = new Contractor(csr, pool);
+        contractor.contract();
+
+        int[] upOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++)
+            for (int i = 0; i < contractor.degree[v]; i++)
+                if(contractor.rank[contractor.targets[v][i]] > contractor.rank[v])
+                    upOffsets[v + 1]++;
+        for (int v = 0; v < n; v++)
+            upOffsets[v + 1] += upOffsets[v];
+
+        // The contractor keeps its rows sorted by target, so the upward
+        // rows come out sorted as well.
+        int m = upOffsets[n];
+        int[] upTargets = new int[m];
+        int[] upWeights = new int[m];
+        int[] upMiddles = new int[m];
+        for (int v = 0; v < n; v++) {
+            int j = upOffsets[v];
+            for (int i = 0; i < contractor.degree[v]; i++) {
+                int u = contractor.targets[v][i];
+                if(contractor.rank[u] <= contractor.rank[v])
+                    continue;
+                upTargets[j] = u;
+                upWeights[j] = contractor.weights[v][i];
+                upMiddles[j] = contractor.middles[v][i];
+                j++;
+            }
+        }
+        return new ContractionHierarchy<>(csr, ids, nodes, contractor.rank, fingerprint(csr),
+                upOffsets, upTargets, upWeights, upMiddles);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public int shortcutCount() {
+        int shortcuts = 0;
+        for (int middle : upMiddles)
+            if(middle >= 0)
+                shortcuts++;
+        return shortcuts;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T nodeAt(int id) {
+        return (T) nodes[id];
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to) {
+        Integer source = ids.get(from);
+        Integer target = ids.get(to);
+        if(source == null || target == null)
+            throw new NoSuchElementException();
+
+        SearchScratch scratch = SearchScratch.acquire();
+        try {
+            return getPath(scratch, source, target);
+        } finally {
+            scratch.release();
+        }
+    }
+
+    private List<Edge<T>> getPath(SearchScratch scratch, int source, int target) {
+        IndexedMinHeap forward = scratch.queue();
+        IndexedMinHeap backward = scratch.backwardQueue();
+        int[] previousForward = scratch.previous(nodes.length);
+        int[] previousBackward = scratch.backwardPrevious(nodes.length);
+        forward.offer(source, 0);
+        backward.offer(target, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        while(!forward.isEmpty() || !backward.isEmpty()) {
+            double minForward = forward.isEmpty() ? Double.POSITIVE_INFINITY : forward.peekKey();
+            double minBackward = backward.isEmpty() ? Double.POSITIVE_INFINITY : backward.peekKey();
+            if(Math.min(minForward, minBackward) >= best)
+                break;
+
+            boolean isForward = minForward <= minBackward;
+            IndexedMinHeap queue = isForward ? forward : backward;
+            IndexedMinHeap other = isForward ? backward : forward;
+            int[] previous = isForward ? previousForward : previousBackward;
+
+            int current = queue.poll();
+            double distance = queue.getKey(current);
+            if(other.isSeen(current) && distance + other.getKey(current) < best) {
+                best = distance + other.getKey(current);
+                meeting = current;
+            }
+            for (int i = upOffsets[current]; i < upOffsets[current + 1]; i++) {
+                int next = upTargets[i];
+                if(queue.offer(next, distance + upWeights[i]))
+                    previous[next] = current;
+            }
+        }
+        if(meeting < 0)
+            return null;
+
+        List<Edge<T>> result = new ArrayList<>();
+        IntStack hops = new IntStack();
+        for (int v = meeting; v != source; v = previousForward[v])
+            hops.push(v);
+        int current = source;
+        while(!hops.isEmpty()) {
+            int next = hops.pop();
+            unpack(current, next, result);
+            current = next;
+        }
+        for (int v = meeting; v != target; v = previousBackward[v])
+            unpack(v, previousBackward[v], result);
+        return result;
+    }
+
+    // Appends the graph edges that the edge or shortcut between a and b stands for.
+    private void unpack(int a, int b, List<Edge<T>> result) {
+        IntStack pending = new IntStack();
+        pending.push(b);
+        pending.push(a);
+        while(!pending.isEmpty()) {
+            int from = pending.pop();
+            int to = pending.pop();
+            int middle = upMiddles[upEdge(from, to)];
+            if(middle < 0) {
+                result.add(graph.getEdgeBetween(nodeAt(from), nodeAt(to)));
+            } else {
+                pending.push(to);
+                pending.push(middle);
+                pending.push(middle);
+                pending.push(from);
+            }
+        }
+    }
+
+    private int upEdge(int a, int b) {
+        int low = rank[a] < rank[b] ? a : b;
+        int high = low == a ? b : a;
+        return Arrays.binarySearch(upTargets, upOffsets[low], upOffsets[low + 1], high);
+    }
+
+    // Order independent hash of the places and connections, stored with the
+    // index so that a saved index is not used with a different graph.
+    static <T extends Vertex> long fingerprint(Graph<T> graph) {
+        long hash = graph.getNodes().size();
+        for (T node : graph.getNodes()) {
+            int name = node.getName().hashCode();
+            hash += mix(name);
+            for (Edge<T> e : graph.getEdgesFrom(node))
+                hash += mix(((long) name << 32) ^ (e.getDestination().getName().hashCode() * 31L + e.getWeight()));
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint);
+        out.writeInt(nodes.length);
+        for (int id = 0; id < nodes.length; id++) {
+            byte[] name = nodeAt(id).getName().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(rank[id]);
+        }
+        out.writeInt(upTargets.length);
+        for (int offset : upOffsets)
+            out.writeInt(offset);
+        for (int i = 0; i < upTargets.length; i++) {
+            out.writeInt(upTargets[i]);
+            out.writeInt(upWeights[i]);
+            out.writeInt(upMiddles[i]);
+        }
+        out.flush();
+    }
+
+    // Reads an index written by write for the same graph. Places are matched
+    // by name, and an index saved for a different graph is rejected. Every
+    // count and id is checked before it is used, and the edge arrays grow
+    // with the bytes actually read, so a truncated or corrupt file fails with
+    // an IOException instead of a huge allocation or a broken index.
+    public static <T extends Vertex> ContractionHierarchy<T> read(InputStream stream, Graph<T> graph) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        try {
+            return read(in, graph);
+        } catch (EOFException e) {
+            throw new IOException("Truncated contraction hierarchy", e);
+        }
+    }
+
+    private static <T extends Vertex> ContractionHierarchy<T> read(DataInputStream in, Graph<T> graph) throws IOException {
+        if(in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("Not a contraction hierarchy");
+        long fingerprint = in.readLong();
+        if(fingerprint != fingerprint(graph))
+            throw new IOException("Contraction hierarchy was built for a different graph");
+
+        Map<String, T> byName = new HashMap<>();
+        int longestName = 0;
+        for (T node : graph.getNodes()) {
+            if(byName.put(node.getName(), node) != null)
+                throw new IOException("Place names are not unique: " + node.getName());
+            longestName = Math.max(longestName, node.getName().getBytes(StandardCharsets.UTF_8).length);
+        }
+
+        int n = in.readInt();
+        if(n != byName.size())
+            throw new IOException("Contraction hierarchy was built for a different graph");
+        Map<T, Integer> ids = new HashMap<>(n * 4 / 3 + 1);
+        Object[] nodes = new Object[n];
+        int[] rank = new int[n];
+        boolean[] ranked = new boolean[n];
+        for (int id = 0; id < n; id++) {
+            int length = in.readInt();
+            if(length < 0 || length > longestName)
+                throw new IOException("Contraction hierarchy was built for a different graph");
+            byte[] name = new byte[length];
+            in.readFully(name);
+            T node = byName.get(new String(name, StandardCharsets.UTF_8));
+            if(node == null || ids.put(node, id) != null)
+                throw new IOException("Contraction hierarchy was built for a different graph");
+            nodes[id] = node;
+            rank[id] = in.readInt();
+            if(rank[id] < 0 || rank[id] >= n || ranked[rank[id]])
+                throw new IOException("Corrupt contraction hierarchy, bad rank for " + node.getName());
+            ranked[rank[id]] = true;
+        }
+
+        // Upward rows hold distinct targets, so there are at most n(n-1)/2 edges.
+        int m = in.readInt();
+        if(m < 0 || m > (long) n * (n - 1) / 2)
+            throw new IOException("Corrupt contraction hierarchy, edge count " + m + " out of range");
+        int[] upOffsets = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            upOffsets[i] = in.readInt();
+            if(i == 0 ? upOffsets[i] != 0 : upOffsets[i] < upOffsets[i - 1] || upOffsets[i] > m)
+                throw new IOException("Corrupt contraction hierarchy, bad offset for row " + i);
+        }
+        if(upOffsets[n] != m)
+            throw new IOException("Corrupt contraction hierarchy, rows do not add up to " + m + " edges");
+
+        int capacity = Math.min(m, 1 << 16);
+        int[] upTargets = new int[capacity];
+        int[] upWeights = new int[capacity];
+        int[] upMiddles = new int[capacity];
+        for (int v = 0, i = 0; v < n; v++) {
+            for (; i < upOffsets[v + 1]; i++) {
+                if(i == capacity) {
+                    capacity = (int) Math.min(m, 2L * capacity);
+                    upTargets = Arrays.copyOf(upTargets, capacity);
+                    upWeights = Arrays.copyOf(upWeights, capacity);
+                    upMiddles = Arrays.copyOf(upMiddles, capacity);
+                }
+                upTargets[i] = in.readInt();
+                upWeights[i] = in.readInt();
+                upMiddles[i] = in.readInt();
+                // Rows are sorted by target and only lead up, and a shortcut
+                // skips a node below both ends, so unpacking always ends.
+                int target = upTargets[i];
+                int middle = upMiddles[i];
+                if(target < 0 || target >= n || rank[target] <= rank[v]
+                        || (i > upOffsets[v] && target <= upTargets[i - 1])
+                        || upWeights[i] < 0
+                        || middle < -1 || middle >= n || (middle >= 0 && rank[middle] >= rank[v]))
+                    throw new IOException("Corrupt contraction hierarchy, bad edge " + i);
+            }
+        }
+
+        ContractionHierarchy<T> ch = new ContractionHierarchy<>(graph, ids, nodes, rank, fingerprint,
+                upOffsets, upTargets, upWeights, upMiddles);
+        for (int v = 0; v < n; v++)
+            for (int i = upOffsets[v]; i < upOffsets[v + 1]; i++)
+                if(upMiddles[i] >= 0 && (ch.upEdge(v, upMiddles[i]) < 0 || ch.upEdge(upMiddles[i], upTargets[i]) < 0))
+                    throw new IOException("Corrupt contraction hierarchy, shortcut " + i + " skips a missing edge");
+        return ch;
+    }
+
+    @Override
+    public String toString() {
+        return "ContractionHierarchy[" + nodes.length + " nodes, " + upTargets.length + " upward edges, "
+                + shortcutCount() + " shortcuts]";
+    }
+
+    private static final class IntStack {
+        private int[] items = new int[16];
+        private int size;
+
+        void push(int item) {
+            if(size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    // Works on an undirected overlay graph, every edge and shortcut is kept
+    // in the lists of both its ends and is never removed. Each list is sorted
+    // by target, and the shortcuts of a round are sorted and merged into the
+    // lists they touch, so that a hub of degree d that gains k shortcuts
+    // costs O(d + k log k) instead of a scan of its list for each of them.
+    private static final class Contractor {
+        final int n;
+        final ForkJoinPool pool;
+        final int[][] targets;
+        final int[][] weights;
+        final int[][] middles;
+        final int[] degree;
+        final int[] rank;
+        final int[] priority;
+        final int[] deletedNeighbours;
+        final int[] level;
+        final boolean[] contracted;
+        final boolean[] inRound;
+
+        Contractor(CsrGraph<?> graph, ForkJoinPool pool) {
+            this.pool = pool;
+            n = graph.size();
+            targets = new int[n][];
+            weights = new int[n][];
+            middles = new int[n][];
+            degree = new int[n];
+            rank = new int[n];
+            priority = new int[n];
+            deletedNeighbours = new int[n];
+            level = new int[n];
+            contracted = new boolean[n];
+            inRound = new boolean[n];
+            // The rows of the graph are sorted by target already.
+            for (int v = 0; v < n; v++) {
+                int size = graph.firstEdge(v + 1) - graph.firstEdge(v);
+                targets[v] = new int[size];
+                weights[v] = new int[size];
+                middles[v] = new int[size];
+                for (int i = graph.firstEdge(v); i < graph.firstEdge(v + 1); i++)
+                    if(graph.target(i) != v)
+                        append(v, graph.target(i), graph.weight(i), -1);
+            }
+        }
+
+        // Adds to the end of a row that has room, where an entry for the same
+        // target can only be the last one; that keeps the lower weight.
+        private void append(int u, int v, int weight, int middle) {
+            int last = degree[u] - 1;
+            if(last >= 0 && targets[u][last] == v) {
+                if(weight < weights[u][last]) {
+                    weights[u][last] = weight;
+                    middles[u][last] = middle;
+                }
+                return;
+            }
+            targets[u][degree[u]] = v;
+            weights[u][degree[u]] = weight;
+            middles[u][degree[u]] = middle;
+            degree[u]++;
+        }
+
+        // Adds the (from, to, weight) shortcuts found for each selected node,
+        // both ways round, with that node as their middle.
+        void addShortcuts(int[] selected, int[][] shortcuts) {
+            int count = 0;
+            for (int[] found : shortcuts)
+                count += 2 * ((found[0] - 1) / 3);
+            int[] from = new int[count];
+            int[] to = new int[count];
+            int[] weight = new int[count];
+            int[] middle = new int[count];
+            int next = 0;
+            for (int k = 0; k < selected.length; k++) {
+                int[] found = shortcuts[k];
+                for (int i = 1; i < found[0]; i += 3) {
+                    for (int end = 0; end < 2; end++) {
+                        from[next] = found[i + end];
+                        to[next] = found[i + 1 - end];
+                        weight[next] = found[i + 2];
+                        middle[next] = selected[k];
+                        next++;
+                    }
+                }
+            }
+
+            // By row first, then each row's new entries by target; the
+            // position in the low half keeps equal keys in the order found.
+            long[] byRow = new long[count];
+            for (int i = 0; i < count; i++)
+                byRow[i] = (long) from[i] << 32 | i;
+            Arrays.sort(byRow);
+            long[] byTarget = new long[count];
+            for (int start = 0, end; start < count; start = end) {
+                int u = (int) (byRow[start] >>> 32);
+                end = start;
+                while(end < count && (int) (byRow[end] >>> 32) == u)
+                    end++;
+                int added = end - start;
+                for (int i = 0; i < added; i++) {
+                    int entry = (int) byRow[start + i];
+                    byTarget[i] = (long) to[entry] << 32 | entry;
+                }
+                Arrays.sort(byTarget, 0, added);
+                merge(u, byTarget, added, weight, middle);
+            }
+        }
+
+        // Merges new entries, sorted by target, into the row of u. Where the
+        // row already has the target the lower weight is kept, the earlier
+        // entry on a tie.
+        private void merge(int u, long[] added, int count, int[] weight, int[] middle) {
+            int[] oldTargets = targets[u];
+            int[] oldWeights = weights[u];
+            int[] oldMiddles = middles[u];
+            int oldDegree = degree[u];
+            targets[u] = new int[oldDegree + count];
+            weights[u] = new int[oldDegree + count];
+            middles[u] = new int[oldDegree + count];
+            degree[u] = 0;
+            int i = 0;
+            int j = 0;
+            while(i < oldDegree || j < count) {
+                if(j == count || (i < oldDegree && oldTargets[i] <= (int) (added[j] >>> 32))) {
+                    append(u, oldTargets[i], oldWeights[i], oldMiddles[i]);
+                    i++;
+                } else {
+                    int entry = (int) added[j];
+                    append(u, (int) (added[j] >>> 32), weight[entry], middle[entry]);
+                    j++;
+                }
+            }
+        }
+
+        void contract() {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(this::updatePriority)).join();
+
+            int nextRank = 0;
+            while(nextRank < n) {
+                int[] selected = pool.submit(() -> IntStream.range(0, n).parallel()
+                        .filter(v -> !contracted[v] && isLocalMinimum(v)).toArray()).join();
+                for (int v : selected)
+                    inRound[v] = true;
+
+                int[][] shortcuts = new int[selected.length][];
+                pool.submit(() -> IntStream.range(0, selected.length).parallel()
+                        .forEach(k -> shortcuts[k] = shortcuts(selected[k], true, WITNESS_SETTLE_LIMIT))).join();
+
+                // No two selected nodes are neighbours, so the shortcuts,
+                // which join neighbours of a selected node, never change the
+                // row of another one.
+                addShortcuts(selected, shortcuts);
+                Set<Integer> touched = new HashSet<>();
+                for (int v : selected) {
+                    contracted[v] = true;
+                    inRound[v] = false;
+                    rank[v] = nextRank++;
+                    for (int i = 0; i < degree[v]; i++) {
+                        int u = targets[v][i];
+                        if(!contracted[u]) {
+                            deletedNeighbours[u]++;
+                            level[u] = Math.max(level[u], level[v] + 1);
+                            touched.add(u);
+                        }
+                    }
+                }
+                int[] update = touched.stream().mapToInt(Integer::intValue).filter(u -> !contracted[u]).toArray();
+                pool.submit(() -> Arrays.stream(update).parallel().forEach(this::updatePriority)).join();
+            }
+        }
+
+        // Less important than every remaining neighbour, ties go to the lower id.
+        boolean isLocalMinimum(int v) {
+            for (int i = 0; i < degree[v]; i++) {
+                int u = targets[v][i];
+                if(contracted[u])
+                    continue;
+                if(priority[u] < priority[v] || (priority[u] == priority[v] && u < v))
+                    return false;
+            }
+            return true;
+        }
+
+        void updatePriority(int v) {
+            int shortcuts = shortcuts(v, false, ESTIMATE_SETTLE_LIMIT)[0];
+            int remaining = 0;
+            for (int i = 0; i < degree[v]; i++)
+                if(!contracted[targets[v][i]])
+                    remaining++;
+            priority[v] = 2 * (shortcuts - remaining) + deletedNeighbours[v] + level[v];
+        }
+
+        // The shortcuts contracting v needs. The first element is the length
+        // used, followed by (from, to, weight) triples; without collect only
+        // the count is returned, in the first element.
+        int[] shortcuts(int v, boolean collect, int settleLimit) {
+            SearchScratch scratch = SearchScratch.acquire();
+            try {
+                return shortcuts(scratch.queue(), v, collect, settleLimit);
+            } finally {
+                scratch.release();
+            }
+        }
+
+        private int[] shortcuts(IndexedMinHeap queue, int v, boolean collect, int settleLimit) {
+            int[] found = collect ? new int[16] : null;
+            int used = 1;
+            int count = 0;
+            for (int i = 0; i < degree[v]; i++) {
+                int u = targets[v][i];
+                if(contracted[u])
+                    continue;
+                long limit = -1;
+                for (int j = i + 1; j < degree[v]; j++)
+                    if(!contracted[targets[v][j]])
+                        limit = Math.max(limit, (long) weights[v][i] + weights[v][j]);
+                if(limit < 0)
+                    continue;
+
+                witnessSearch(queue, u, v, limit, settleLimit);
+                for (int j = i + 1; j < degree[v]; j++) {
+                    int w = targets[v][j];
+                    if(contracted[w])
+                        continue;
+                    long through = (long) weights[v][i] + weights[v][j];
+                    if(queue.isSeen(w) && queue.getKey(w) <= through)
+                        continue;
+                    count++;
+                    if(collect) {
+                        if(used + 3 > found.length)
+                            found = Arrays.copyOf(found, found.length * 2);
+                        found[used++] = u;
+                        found[used++] = w;
+                        found[used++] = (int) Math.min(through, Integer.MAX_VALUE);
+                    }
+                }
+            }
+            if(!collect)
+                return new int[] {count};
+            found[0] = used;
+            return found;
+        }
+
+        // Bounded Dijkstra from source that avoids the node being contracted
+        // and every node contracted in this round or before.
+        void witnessSearch(IndexedMinHeap queue, int source, int avoid, long limit, int settleLimit) {
+            queue.clear();
+            queue.offer(source, 0);
+            int settled = 0;
+            while(!queue.isEmpty() && settled++ < settleLimit) {
+                if(queue.peekKey() > limit)
+                    break;
+                int current = queue.poll();
+                double distance = queue.getKey(current);
+                for (int i = 0; i < degree[current]; i++) {
+                    int next = targets[current][i];
+                    if(next == avoid || contracted[next] || inRound[next])
+                        continue;
+                    queue.offer(next, distance + weights[current][i]);
+                }
+            }
+        }
+    }
+}
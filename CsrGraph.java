@@ -0,0 +1,513 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Frozen copy of a graph in compressed sparse row form. Nodes are interned to
+// ids 0..n-1, the edges leaving node i are at positions offsets[i] until
+// offsets[i + 1] of the targets, weights and names arrays, sorted by target.
+// Edge objects are only created for the edges handed out to callers.
+// Weights are kept in fixed size chunks so that withConnectionWeight can make
+// a new graph that shares everything but the two chunks it changes.
+public class CsrGraph<T> implements Graph<T> {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    // Rows up to this long are insertion sorted, longer ones, the hubs of a
+    // scale-free graph, are sorted in O(d log d).
+    private static final int INSERTION_SORT_LIMIT = 32;
+
+    private final Map<T, Integer> ids;
+    private final Object[] nodes;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[][] weights;
+    private final String[] names;
+    // Null unless one was set, see ListGraph. The admissible scale is taken
+    // over from the graph copied, and scanned for only when that did not
+    // know it.
+    private Heuristic<T> heuristic;
+    private volatile EuclideanHeuristic.Scale scale = EuclideanHeuristic.Scale.UNKNOWN;
+    private volatile SearchStats lastSearchStats = new SearchStats();
+
+    public CsrGraph(Graph<T> graph) {
+        // A live graph is copied from the version current now, so that edits
+        // made while copying cannot mix in.
+        if(graph instanceof ConcurrentGraph)
+            graph = ((ConcurrentGraph<T>) graph).version();
+        else if(graph instanceof VersionedGraph)
+            graph = ((VersionedGraph<T>) graph).snapshot().getGraph();
+        Set<T> source = graph.getNodes();
+        int n = source.size();
+        ids = new HashMap<>(n * 4 / 3 + 1);
+        nodes = new Object[n];
+        offsets = new int[n + 1];
+        for (T node : source) {
+            int id = ids.size();
+            ids.put(node, id);
+            nodes[id] = node;
+            offsets[id + 1] = offsets[id] + graph.getEdgesFrom(node).size();
+        }
+
+        int m = offsets[n];
+        targets = new int[m];
+        int[] flatWeights = new int[m];
+        names = new String[m];
+        for (int id = 0; id < n; id++) {
+            int i = offsets[id];
+            for (Edge<T> e : graph.getEdgesFrom(nodeAt(id))) {
+                targets[i] = ids.get(e.getDestination());
+                flatWeights[i] = e.getWeight();
+                names[i] = e.getName();
+                i++;
+            }
+            sortRow(offsets[id], offsets[id + 1], flatWeights);
+        }
+        weights = new int[(m + CHUNK_MASK) >>> CHUNK_SHIFT][];
+        for (int c = 0; c < weights.length; c++)
+            weights[c] = Arrays.copyOfRange(flatWeights, c << CHUNK_SHIFT, Math.min(m, (c + 1) << CHUNK_SHIFT));
+        if(graph instanceof ListGraph) {
+            heuristic = ((ListGraph<T>) graph).chosenHeuristic();
+            scale = ((ListGraph<T>) graph).scale();
+        } else if(graph instanceof CsrGraph) {
+            scale = ((CsrGraph<T>) graph).scale;
+        }
+    }
+
+    private CsrGraph(CsrGraph<T> graph, int[][] weights, EuclideanHeuristic.Scale scale) {
+        ids = graph.ids;
+        nodes = graph.nodes;
+        offsets = graph.offsets;
+        targets = graph.targets;
+        names = graph.names;
+        heuristic = graph.heuristic;
+        this.weights = weights;
+        this.scale = scale;
+    }
+
+    // Copy of this graph with a new weight on the connection, sharing the
+    // nodes, the edges and every weight chunk that does not change.
+    public CsrGraph<T> withConnectionWeight(T node1, T node2, int weight) {
+        if(weight<0)
+            throw new IllegalArgumentException();
+        int u = idOf(node1);
+        int v = idOf(node2);
+        int forward = edgeIndex(u, v);
+        int backward = edgeIndex(v, u);
+        if(forward < 0 || backward < 0)
+            throw new IllegalStateException();
+
+        int oldWeight = weight(forward);
+        int[][] next = weights.clone();
+        setWeight(next, forward, weight);
+        setWeight(next, backward, weight);
+        return new CsrGraph<>(this, next, scale.weightChanged(node1, node2, oldWeight, weight));
+    }
+
+    private void setWeight(int[][] chunks, int edge, int weight) {
+        int c = edge >>> CHUNK_SHIFT;
+        if(chunks[c] == weights[c])
+            chunks[c] = chunks[c].clone();
+        chunks[c][edge & CHUNK_MASK] = weight;
+    }
+
+    private void sortRow(int start, int end, int[] weights) {
+        if(end - start <= INSERTION_SORT_LIMIT) {
+            insertionSortRow(start, end, weights);
+            return;
+        }
+        // Target in the high half and position in the low half, so that one
+        // sort of longs gives the order of the row.
+        long[] order = new long[end - start];
+        for (int i = start; i < end; i++)
+            order[i - start] = (long) targets[i] << 32 | (i - start);
+        Arrays.sort(order);
+        int[] rowWeights = Arrays.copyOfRange(weights, start, end);
+        String[] rowNames = Arrays.copyOfRange(names, start, end);
+        for (int k = 0; k < order.length; k++) {
+            int from = (int) order[k];
+            targets[start + k] = (int) (order[k] >>> 32);
+            weights[start + k] = rowWeights[from];
+            names[start + k] = rowNames[from];
+        }
+    }
+
+    private void insertionSortRow(int start, int end, int[] weights) {
+        for (int i = start + 1; i < end; i++) {
+            int target = targets[i];
+            int weight = weights[i];
+            String name = names[i];
+            int j = i - 1;
+            while(j >= start && targets[j] > target) {
+                targets[j + 1] = targets[j];
+                weights[j + 1] = weights[j];
+                names[j + 1] = names[j];
+                j--;
+            }
+            targets[j + 1] = target;
+            weights[j + 1] = weight;
+            names[j + 1] = name;
+        }
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    // Id of the node, or -1 if it is not in the graph.
+    public int indexOf(T node) {
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T nodeAt(int id) {
+        return (T) nodes[id];
+    }
+
+    // The edges of node id are the positions firstEdge(id) until firstEdge(id + 1).
+    public int firstEdge(int id) {
+        return offsets[id];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public int weight(int edge) {
+        return weights[edge >>> CHUNK_SHIFT][edge & CHUNK_MASK];
+    }
+
+    public String edgeName(int edge) {
+        return names[edge];
+    }
+
+    // Position of the edge from node id u to node id v, or -1.
+    public int edgeIndex(int u, int v) {
+        int index = Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v);
+        return index < 0 ? -1 : index;
+    }
+
+    private int idOf(T node) {
+        Integer id = ids.get(node);
+        if(id == null)
+            throw new NoSuchElementException();
+        return id;
+    }
+
+    private Edge<T> edgeAt(int edge) {
+        return new Edge<>(nodeAt(targets[edge]), names[edge], weight(edge));
+    }
+
+    @Override
+    public void add(T node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addAll(GraphBuilder<T> batch) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void connect(T node1, T node2, String name, int weight) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setConnectionWeight(T node1, T node2, int weight) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<T> getNodes() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    @Override
+    public Collection<Edge<T>> getEdgesFrom(T node) {
+        int id = idOf(node);
+        int start = offsets[id];
+        int end = offsets[id + 1];
+        return new AbstractList<Edge<T>>() {
+            @Override
+            public Edge<T> get(int index) {
+                if(index < 0 || start + index >= end)
+                    throw new IndexOutOfBoundsException();
+                return edgeAt(start + index);
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    @Override
+    public Edge<T> getEdgeBetween(T node1, T node2) {
+        int edge = edgeIndex(idOf(node1), idOf(node2));
+        return edge < 0 ? null : edgeAt(edge);
+    }
+
+    @Override
+    public void disconnect(T node1, T node2) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void remove(T node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeAll() {
+        throw new UnsupportedOperationException();
+    }
+
+    // A frozen graph never changes, so there is nothing to tell listeners.
+    @Override
+    public void addListener(GraphListener<T> listener) {
+        Objects.requireNonNull(listener);
+    }
+
+    @Override
+    public void removeListener(GraphListener<T> listener) {
+    }
+
+    @Override
+    public boolean pathExists(T from, T to) {
+        Integer source = ids.get(from);
+        Integer target = ids.get(to);
+        if(source == null || target == null)
+            return false;
+
+        int[] queue = new int[nodes.length];
+        boolean[] visited = new boolean[nodes.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        visited[source] = true;
+        while(head < tail) {
+            int current = queue[head++];
+            if(current == target)
+                return true;
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int next = targets[i];
+                if(!visited[next]) {
+                    visited[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to) {
+        return getPath(from, to, PathMode.SHORTEST);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to, PathMode mode) {
+        int source = idOf(from);
+        int target = idOf(to);
+        SearchStats stats = new SearchStats();
+        lastSearchStats = stats;
+        List<Edge<T>> path;
+        switch (mode) {
+            case FASTEST:
+            case CONTRACTION_HIERARCHY:
+            case BIDIRECTIONAL_FASTEST:
+            case ALL_PAIRS:
+                path = getWeightedPath(source, target, Heuristic.zero(), stats);
+                break;
+            case A_STAR:
+                path = getWeightedPath(source, target, getHeuristic(), stats);
+                break;
+            case SHORTEST:
+            case BIDIRECTIONAL_SHORTEST:
+            default:
+                path = getShortestPath(source, target, stats);
+        }
+        stats.finish(mode);
+        return path;
+    }
+
+    private List<Edge<T>> getShortestPath(int source, int target, SearchStats stats) {
+        int[] queue = new int[nodes.length];
+        int[] previousEdge = new int[nodes.length];
+        Arrays.fill(previousEdge, -1);
+        boolean[] visited = new boolean[nodes.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        visited[source] = true;
+
+        while(head < tail) {
+            stats.nodeExpanded(nodes[queue[head]], tail - head);
+            int current = queue[head++];
+            if(current == target)
+                return gatherPath(source, target, previousEdge);
+
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int next = targets[i];
+                stats.edgeRelaxed();
+                if(!visited[next]) {
+                    visited[next] = true;
+                    previousEdge[next] = i;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<Edge<T>> getWeightedPath(int source, int target, Heuristic<T> heuristic, SearchStats stats) {
+        T goal = nodeAt(target);
+        SearchScratch scratch = SearchScratch.acquire();
+        try {
+            // Only the entries of nodes this search reaches are read.
+            double[] distances = scratch.distances(nodes.length);
+            int[] previousEdge = scratch.previous(nodes.length);
+            IndexedMinHeap queue = scratch.queue();
+            distances[source] = 0;
+            queue.offer(source, heuristic.estimate(nodeAt(source), goal));
+
+            while(!queue.isEmpty()) {
+                int size = queue.size();
+                int current = queue.poll();
+                stats.nodeExpanded(nodes[current], distances[current], size);
+                if(current == target)
+                    return gatherPath(source, target, previousEdge);
+
+                double distance = distances[current];
+                for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                    int next = targets[i];
+                    stats.edgeRelaxed();
+                    if(queue.isRemoved(next))
+                        continue;
+                    double tentative = distance + weight(i);
+                    if(queue.isSeen(next) && tentative >= distances[next])
+                        continue;
+                    if(queue.offer(next, tentative + heuristic.estimate(nodeAt(next), goal))) {
+                        distances[next] = tentative;
+                        previousEdge[next] = i;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            scratch.release();
+        }
+    }
+
+    @Override
+    public int[] getWeightMatrix(List<T> origins, List<T> destinations) {
+        return getWeightMatrix(origins, destinations, ForkJoinPool.commonPool());
+    }
+
+    // One Dijkstra tree per origin, run in parallel on the pool. Each worker
+    // thread reuses its own SearchScratch queue, and a tree stops growing
+    // once every destination is settled.
+    public int[] getWeightMatrix(List<T> origins, List<T> destinations, ForkJoinPool pool) {
+        int[] sources = new int[origins.size()];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = idOf(origins.get(i));
+        int[] columns = new int[destinations.size()];
+        boolean[] wanted = new boolean[nodes.length];
+        int distinct = 0;
+        for (int j = 0; j < columns.length; j++) {
+            columns[j] = idOf(destinations.get(j));
+            if(!wanted[columns[j]]) {
+                wanted[columns[j]] = true;
+                distinct++;
+            }
+        }
+
+        int[] matrix = new int[sources.length * columns.length];
+        int wantedCount = distinct;
+        pool.submit(() -> IntStream.range(0, sources.length).parallel()
+                .forEach(row -> fillRow(matrix, row, sources[row], columns, wanted, wantedCount)))
+                .join();
+        return matrix;
+    }
+
+    private void fillRow(int[] matrix, int row, int source, int[] columns, boolean[] wanted, int remaining) {
+        SearchScratch scratch = SearchScratch.acquire();
+        try {
+            IndexedMinHeap queue = scratch.queue();
+            queue.offer(source, 0);
+            while(remaining > 0 && !queue.isEmpty()) {
+                int current = queue.poll();
+                if(wanted[current])
+                    remaining--;
+                double distance = queue.getKey(current);
+                for (int i = offsets[current]; i < offsets[current + 1]; i++)
+                    queue.offer(targets[i], distance + weight(i));
+            }
+
+            int start = row * columns.length;
+            for (int j = 0; j < columns.length; j++) {
+                int id = columns[j];
+                matrix[start + j] = queue.isRemoved(id) ? (int) Math.min(queue.getKey(id), Integer.MAX_VALUE) : -1;
+            }
+        } finally {
+            scratch.release();
+        }
+    }
+
+    // Walks the previous edges back from target. The source of an edge is
+    // found from its position, since offsets is sorted.
+    private List<Edge<T>> gatherPath(int source, int target, int[] previousEdge) {
+        List<Edge<T>> result = new ArrayList<>();
+        int current = target;
+        while(current != source) {
+            int edge = previousEdge[current];
+            result.add(edgeAt(edge));
+            current = sourceOf(edge);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    int sourceOf(int edge) {
+        int low = 0;
+        int high = nodes.length - 1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(offsets[mid] <= edge)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    public void setHeuristic(Heuristic<T> heuristic) {
+        this.heuristic = Objects.requireNonNull(heuristic);
+    }
+
+    // The heuristic A* uses, the one set or else the admissible one.
+    public Heuristic<T> getHeuristic() {
+        if(heuristic != null)
+            return heuristic;
+        EuclideanHeuristic.Scale known = scale;
+        if(!known.isKnown())
+            scale = known = EuclideanHeuristic.Scale.of(this);
+        return known.heuristic();
+    }
+
+    // Counters from the most recent getPath call.
+    public SearchStats getLastSearchStats() {
+        return lastSearchStats;
+    }
+
+    @Override
+    public String toString() {
+        return "CsrGraph[" + nodes.length + " nodes, " + targets.length + " edges]";
+    }
+}
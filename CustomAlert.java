@@ -48,25 +48,39 @@ abstract class CustomAlert {
     }
 
     static class FindPath extends Alert {
+        private final TextArea textArea = new TextArea();
+        private int alternatives;
 
-        FindPath(Node from, Node to, List<Edge<Node>> path) {
+        // Shows the route asked for, alternatives can be added below it
+        // while the dialog is open.
+        FindPath(Place from, Place to, List<Edge<Place>> path) {
             super(Alert.AlertType.INFORMATION);
             setHeaderText("The Path from " + from.getName() + " to " + to.getName() + ":");
 
             FlowPane pane = new FlowPane();
             getDialogPane().setContent(pane);
+            pane.getChildren().add(textArea);
+            textArea.setEditable(false);
+            textArea.setText(describe(path));
+        }
+
+        void addAlternative(List<Edge<Place>> path) {
+            alternatives++;
+            textArea.appendText("\n\nAlternative " + alternatives + ":\n" + describe(path));
+        }
 
+        int getAlternatives() {
+            return alternatives;
+        }
+
+        private static String describe(List<Edge<Place>> path) {
             StringBuilder message = new StringBuilder();
             int totalTime = 0;
-            for(Edge<Node> e : path) {
+            for(Edge<Place> e : path) {
                 message.append(" to ").append(e.getDestination().getName()).append(" by ").append(e).append("\n");
                 totalTime += e.getWeight();
             }
-            message.append("Total ").append(totalTime);
-            TextArea textArea = new TextArea(message.toString());
-            pane.getChildren().add(textArea);
-            textArea.setEditable(false);
-            showAndWait();
+            return message.append("Total ").append(totalTime).toString();
         }
 
     }
@@ -0,0 +1,112 @@
+
+// Straight-line distance between two vertices multiplied by a weight per unit
+// of distance. Nodes that are not vertices have no coordinates and get 0.
+public class EuclideanHeuristic<T> implements Heuristic<T> {
+
+    private final double scale;
+
+    public EuclideanHeuristic() {
+        this(1);
+    }
+
+    public EuclideanHeuristic(double scale) {
+        if(scale < 0 || Double.isNaN(scale))
+            throw new IllegalArgumentException();
+        this.scale = scale;
+    }
+
+    // Uses the smallest weight-to-distance ratio over every connection in the
+    // graph. Each edge weighs at least scale times its length, so no path can
+    // weigh less than scale times the straight line and the estimate is
+    // admissible (and consistent).
+    public static <T> EuclideanHeuristic<T> admissible(Graph<T> graph) {
+        return Scale.of(graph).heuristic();
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    @Override
+    public double estimate(T node, T target) {
+        return scale * distance(node, target);
+    }
+
+    // The admissible scale of a graph kept up to date edit by edit, together
+    // with the connection that sets it. A new connection or a lower weight can
+    // only lower the scale, and any other connection can be raised or removed
+    // without changing it; only raising or removing that one connection means
+    // the graph has to be scanned again. Immutable, so that the versions and
+    // copies of a graph can hand it on.
+    static final class Scale {
+        static final Scale EMPTY = new Scale(Double.POSITIVE_INFINITY, null, null);
+        static final Scale UNKNOWN = new Scale(Double.NaN, null, null);
+
+        private final double ratio;
+        private final Object node1;
+        private final Object node2;
+        private final EuclideanHeuristic<?> heuristic;
+
+        private Scale(double ratio, Object node1, Object node2) {
+            this.ratio = ratio;
+            this.node1 = node1;
+            this.node2 = node2;
+            heuristic = Double.isNaN(ratio) ? null : new EuclideanHeuristic<>(Double.isInfinite(ratio) ? 0 : ratio);
+        }
+
+        static <T> Scale of(Graph<T> graph) {
+            Scale scale = EMPTY;
+            for (T node : graph.getNodes())
+                for (Edge<T> e : graph.getEdgesFrom(node))
+                    scale = scale.connected(node, e.getDestination(), e.getWeight());
+            return scale;
+        }
+
+        boolean isKnown() {
+            return !Double.isNaN(ratio);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> EuclideanHeuristic<T> heuristic() {
+            if(heuristic == null)
+                throw new IllegalStateException("Scale must be scanned for");
+            return (EuclideanHeuristic<T>) heuristic;
+        }
+
+        Scale connected(Object node1, Object node2, int weight) {
+            double length = distance(node1, node2);
+            if(!isKnown() || length == 0 || weight / length >= ratio)
+                return this;
+            return new Scale(weight / length, node1, node2);
+        }
+
+        Scale weightChanged(Object node1, Object node2, int oldWeight, int newWeight) {
+            if(newWeight < oldWeight)
+                return connected(node1, node2, newWeight);
+            if(newWeight > oldWeight && setBy(node1, node2))
+                return UNKNOWN;
+            return this;
+        }
+
+        Scale disconnected(Object node1, Object node2) {
+            return setBy(node1, node2) ? UNKNOWN : this;
+        }
+
+        Scale removed(Object node) {
+            return node.equals(node1) || node.equals(node2) ? UNKNOWN : this;
+        }
+
+        // Either way round, since connections are kept in both directions.
+        private boolean setBy(Object a, Object b) {
+            return a.equals(node1) && b.equals(node2) || a.equals(node2) && b.equals(node1);
+        }
+    }
+
+    static double distance(Object a, Object b) {
+        if(!(a instanceof Vertex) || !(b instanceof Vertex))
+            return 0;
+        Vertex v1 = (Vertex) a;
+        Vertex v2 = (Vertex) b;
+        return Math.hypot(v1.getX() - v2.getX(), v1.getY() - v2.getY());
+    }
+}
@@ -5,6 +5,11 @@ import java.util.Set;
 public interface Graph<T> {
 
     void add(T node);
+
+    // Adds a batch of nodes and connections in one go, see GraphBuilder.
+    default void addAll(GraphBuilder<T> batch) {
+        GraphBuilder.addEach(this, batch);
+    }
     
     void connect(T node1, T node2, String name, int weight);
     
@@ -26,4 +31,24 @@ public interface Graph<T> {
     
     List<Edge<T>> getPath(T from, T to);
 
+    List<Edge<T>> getPath(T from, T to, PathMode mode);
+
+    // Up to k loopless paths of lowest total weight, best first, see
+    // KShortestPaths for the method and its cost.
+    default List<List<Edge<T>>> getPaths(T from, T to, int k) {
+        return KShortestPaths.find(this, from, to, k).getPaths();
+    }
+
+    // The listener is told about every later change, see GraphListener.
+    void addListener(GraphListener<T> listener);
+
+    void removeListener(GraphListener<T> listener);
+
+    // Lowest total weight from every origin to every destination, row by
+    // row: the weight from origins[i] to destinations[j] is at
+    // i * destinations.size() + j, and -1 where there is no path.
+    default int[] getWeightMatrix(List<T> origins, List<T> destinations) {
+        return new CsrGraph<>(this).getWeightMatrix(origins, destinations);
+    }
+
 }
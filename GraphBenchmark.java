@@ -0,0 +1,274 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+// Benchmarks for the graph core, runs without JavaFX:
+//   javac -d out -sourcepath . GraphBenchmark.java
+//   java -Xmx16g -cp out GraphBenchmark [grid|geometric|scalefree ...] [-edges 1000,100000,10000000] [-warmup 3] [-iterations 5] [-fork]
+// or after mvn compile with -cp target/classes.
+// The default sizes go from a thousand to ten million edges, the largest
+// needs a heap of several gigabytes.
+//
+// It follows JMH's method without depending on it, so that it runs from
+// the bare sources. Each operation first runs -warmup times unmeasured,
+// so the JIT has compiled it, then -iterations times measured, and the
+// report is the total operations over the total time of the measured runs,
+// with the bytes allocated per operation by the benchmark thread. Results
+// go into a blackhole that is printed at the end, so the JIT cannot drop the
+// work. With -fork every shape and size runs in a fresh JVM with the same
+// options, so the profile and the heap of one run do not affect the next;
+// without it everything shares one JVM, which is quicker but lets the
+// earlier runs shape the JIT's decisions for the later ones.
+public class GraphBenchmark {
+
+    private static final long SEED = 42;
+    private static final int QUERIES = 200;
+
+    private final int warmup;
+    private final int iterations;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long blackhole;
+
+    GraphBenchmark(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, BiFunction<Integer, Long, Graph<Place>>> shapes = new LinkedHashMap<>();
+        shapes.put("grid", GraphGenerator::grid);
+        shapes.put("geometric", GraphGenerator::randomGeometric);
+        shapes.put("scalefree", GraphGenerator::scaleFree);
+
+        List<String> selected = new ArrayList<>();
+        int[] sizes = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+        int warmup = 3;
+        int iterations = 5;
+        boolean fork = false;
+        boolean header = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-edges":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-fork":
+                    fork = true;
+                    break;
+                case "-noheader":
+                    header = false;
+                    break;
+                default:
+                    if(!shapes.containsKey(args[i]))
+                        throw new IllegalArgumentException("Unknown graph shape: " + args[i]);
+                    selected.add(args[i]);
+            }
+        }
+        if(selected.isEmpty())
+            selected.addAll(shapes.keySet());
+
+        if(header)
+            System.out.printf("%-10s %10s %-22s %16s %14s%n", "shape", "edges", "operation", "ops/s", "bytes/op");
+        if(fork) {
+            for (String shape : selected)
+                for (int edges : sizes)
+                    fork(shape, edges, warmup, iterations);
+            return;
+        }
+        GraphBenchmark benchmark = new GraphBenchmark(warmup, iterations);
+        for (String shape : selected)
+            for (int edges : sizes)
+                benchmark.runAll(shape, edges, shapes.get(shape));
+        System.out.println("blackhole " + benchmark.blackhole);
+    }
+
+    // Runs one shape and size in a child JVM with this JVM's options and
+    // class path, its report going to this one's output.
+    private static void fork(String shape, int edges, int warmup, int iterations) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), GraphBenchmark.class.getName(), shape,
+                "-edges", String.valueOf(edges), "-warmup", String.valueOf(warmup),
+                "-iterations", String.valueOf(iterations), "-noheader"));
+        Process child = new ProcessBuilder(command).inheritIO().start();
+        try {
+            if(child.waitFor() != 0)
+                throw new IOException("Benchmark of " + shape + " with " + edges + " edges failed");
+        } catch (InterruptedException e) {
+            child.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void runAll(String shape, int edges, BiFunction<Integer, Long, Graph<Place>> generator) throws IOException {
+        Graph<Place> graph = generator.apply(edges, SEED);
+        List<Place> nodes = new ArrayList<>(graph.getNodes());
+        List<Connection> connections = connections(graph);
+        Random random = new Random(SEED);
+        String label = String.format("%-10s %10d", shape, connections.size());
+
+        measure(label, "connect", () -> {
+            Graph<Place> copy = new ListGraph<>();
+            for (Place p : nodes)
+                copy.add(p);
+            for (Connection c : connections)
+                copy.connect(c.from, c.to, c.name, c.weight);
+            return connections.size();
+        });
+
+        measure(label, "getEdgeBetween", () -> {
+            for (Connection c : connections)
+                blackhole += graph.getEdgeBetween(c.from, c.to).getWeight();
+            return connections.size();
+        });
+
+        int[][] queries = new int[QUERIES][2];
+        for (int[] q : queries) {
+            q[0] = random.nextInt(nodes.size());
+            q[1] = random.nextInt(nodes.size());
+        }
+        for (PathMode mode : PathMode.values()) {
+            measure(label, "getPath " + mode, () -> {
+                for (int[] q : queries) {
+                    List<Edge<Place>> path = graph.getPath(nodes.get(q[0]), nodes.get(q[1]), mode);
+                    blackhole += path == null ? 0 : path.size();
+                }
+                return queries.length;
+            });
+        }
+
+        measure(label, "pathExists", () -> {
+            for (int[] q : queries)
+                blackhole += graph.pathExists(nodes.get(q[0]), nodes.get(q[1])) ? 1 : 0;
+            return queries.length;
+        });
+
+        // Removing is destructive, so each iteration works on a fresh copy
+        // built outside of the measurement.
+        int removals = Math.min(QUERIES, nodes.size() / 2);
+        measure(label, "remove", () -> copyOf(nodes, connections), copy -> {
+            for (int i = 0; i < removals; i++)
+                copy.remove(nodes.get(i));
+            return removals;
+        });
+
+        Path text = Files.createTempFile("benchmark", ".graph");
+        Path binary = Files.createTempFile("benchmark", GraphBinaryFormat.EXTENSION);
+        try {
+            measure(label, "save text", () -> {
+                try (GraphTextWriter out = new GraphTextWriter(Files.newBufferedWriter(text, StandardCharsets.UTF_8))) {
+                    GraphSink.export("file:europa.gif", graph, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return connections.size();
+            });
+            measure(label, "load text", () -> {
+                try (Reader in = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+                    return new GraphTextReader(in).read(new DiscardingSink()).getConnections();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            GraphBinaryFormat.convertTextToBinary(text, binary);
+            measure(label, "load binary", () -> {
+                try {
+                    return GraphBinaryFormat.read(binary, new DiscardingSink()).getConnections();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(binary);
+        }
+    }
+
+    private void measure(String label, String operation, IntSupplier body) {
+        measure(label, operation, () -> null, ignored -> body.getAsInt());
+    }
+
+    private <S> void measure(String label, String operation, Supplier<S> setUp, ToIntFunction<S> body) {
+        for (int i = 0; i < warmup; i++)
+            body.applyAsInt(setUp.get());
+
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            S state = setUp.get();
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            ops += body.applyAsInt(state);
+            nanos += System.nanoTime() - start;
+            bytes += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        }
+        System.out.printf("%s %-22s %16.1f %14.1f%n", label, operation,
+                ops * 1e9 / Math.max(1, nanos), (double) bytes / Math.max(1, ops));
+    }
+
+    private static Graph<Place> copyOf(List<Place> nodes, List<Connection> connections) {
+        Graph<Place> copy = new ListGraph<>();
+        for (Place p : nodes)
+            copy.add(p);
+        for (Connection c : connections)
+            copy.connect(c.from, c.to, c.name, c.weight);
+        return copy;
+    }
+
+    private static List<Connection> connections(Graph<Place> graph) {
+        List<Connection> connections = new ArrayList<>();
+        Set<Place> done = new HashSet<>();
+        for (Place node : graph.getNodes()) {
+            for (Edge<Place> e : graph.getEdgesFrom(node))
+                if(!done.contains(e.getDestination()))
+                    connections.add(new Connection(node, e.getDestination(), e.getName(), e.getWeight()));
+            done.add(node);
+        }
+        return connections;
+    }
+
+    private static class Connection {
+        final Place from;
+        final Place to;
+        final String name;
+        final int weight;
+
+        Connection(Place from, Place to, String name, int weight) {
+            this.from = from;
+            this.to = to;
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    private static class DiscardingSink implements GraphSink {
+        @Override
+        public void image(String location) {
+        }
+
+        @Override
+        public void place(String name, double x, double y) {
+        }
+
+        @Override
+        public void connection(String from, String to, String name, int weight) {
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Binary .graphb format, all numbers big-endian:
+//   int magic, int version
+//   int string count, per string: int byte length, UTF-8 bytes
+//   int image string
+//   int place count, per place: int name string, double x, double y
+//   int connection count, per connection: int from place, int to place, int name string, int weight
+// Every undirected connection is stored once. Files are read through a
+// memory mapping, or copied into the heap with readCopy, so they are limited
+// to 2 GB.
+public final class GraphBinaryFormat {
+
+    public static final String EXTENSION = ".graphb";
+
+    private static final int MAGIC = 0x47525042;
+    private static final int VERSION = 1;
+
+    private GraphBinaryFormat() {
+    }
+
+    public static LoadStats read(Path file, GraphSink sink) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file, sink, start);
+        }
+    }
+
+    // Reads the file into the heap rather than mapping it, for a file that
+    // is replaced later on while the program runs. A mapping lasts until its
+    // buffer is garbage collected, and Windows does not replace a mapped file.
+    static LoadStats readCopy(Path file, GraphSink sink) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("Too large for a " + EXTENSION + " file: " + file);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining())
+                if(channel.read(buffer) < 0)
+                    throw new EOFException("File shrank while reading: " + file);
+            return read(buffer.flip(), file, sink, start);
+        }
+    }
+
+    private static LoadStats read(ByteBuffer buffer, Path file, GraphSink sink, long start) throws IOException {
+        try {
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException("Not a " + EXTENSION + " file: " + file);
+
+            String[] strings = new String[count(buffer, 4, file)];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int length = count(buffer, 1, file);
+                if(length > bytes.length)
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            sink.image(strings[buffer.getInt()]);
+
+            int places = count(buffer, 20, file);
+            String[] placeNames = new String[places];
+            for (int i = 0; i < places; i++) {
+                placeNames[i] = strings[buffer.getInt()];
+                sink.place(placeNames[i], buffer.getDouble(), buffer.getDouble());
+            }
+
+            int connections = count(buffer, 16, file);
+            for (int i = 0; i < connections; i++) {
+                String from = placeNames[buffer.getInt()];
+                String to = placeNames[buffer.getInt()];
+                sink.connection(from, to, strings[buffer.getInt()], buffer.getInt());
+            }
+            LoadStats stats = new LoadStats(places, connections, System.nanoTime() - start);
+            GraphMetrics.loadFinished("binary", stats);
+            return stats;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt " + EXTENSION + " file: " + file, e);
+        }
+    }
+
+    // Reads a count of records of this many bytes each and checks that they
+    // fit in what is left of the file, before anything is allocated for them.
+    private static int count(ByteBuffer buffer, int recordBytes, Path file) throws IOException {
+        int count = buffer.getInt();
+        if(count < 0 || (long) count * recordBytes > buffer.remaining())
+            throw new IOException("Truncated or corrupt " + EXTENSION + " file, count " + count + " out of range: " + file);
+        return count;
+    }
+
+    public static void convertTextToBinary(Path text, Path binary) throws IOException {
+        BinaryWriter writer = new BinaryWriter();
+        try (Reader in = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+            new GraphTextReader(in).read(writer);
+        }
+        writer.writeTo(binary);
+    }
+
+    public static void convertBinaryToText(Path binary, Path text) throws IOException {
+        try (GraphTextWriter out = new GraphTextWriter(Files.newBufferedWriter(text, StandardCharsets.UTF_8))) {
+            read(binary, out);
+        }
+    }
+
+    // Collects a graph in memory and writes it in one go, since the string
+    // table and the counts come first in the file. Connections to unknown
+    // places and repeated connections between the same places are dropped.
+    public static class BinaryWriter implements GraphSink {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> stringList = new ArrayList<>();
+        private final Map<String, Integer> placeIds = new HashMap<>();
+        private final Set<Long> pairs = new HashSet<>();
+        private int image = -1;
+        private int[] placeNames = new int[64];
+        private double[] coordinates = new double[128];
+        private int placeCount;
+        private int[] connections = new int[256];
+        private int connectionCount;
+
+        @Override
+        public void image(String location) {
+            image = intern(location);
+        }
+
+        @Override
+        public void place(String name, double x, double y) {
+            if(placeIds.containsKey(name))
+                return;
+            if(placeCount == placeNames.length) {
+                placeNames = Arrays.copyOf(placeNames, placeCount * 2);
+                coordinates = Arrays.copyOf(coordinates, placeCount * 4);
+            }
+            placeIds.put(name, placeCount);
+            placeNames[placeCount] = intern(name);
+            coordinates[2 * placeCount] = x;
+            coordinates[2 * placeCount + 1] = y;
+            placeCount++;
+        }
+
+        @Override
+        public void connection(String from, String to, String name, int weight) {
+            Integer id1 = placeIds.get(from);
+            Integer id2 = placeIds.get(to);
+            if(id1 == null || id2 == null)
+                return;
+            long pair = ((long) Math.min(id1, id2) << 32) | Math.max(id1, id2);
+            if(!pairs.add(pair))
+                return;
+            if(4 * connectionCount == connections.length)
+                connections = Arrays.copyOf(connections, connections.length * 2);
+            int i = 4 * connectionCount++;
+            connections[i] = id1;
+            connections[i + 1] = id2;
+            connections[i + 2] = intern(name);
+            connections[i + 3] = weight;
+        }
+
+        private int intern(String s) {
+            Integer id = strings.get(s);
+            if(id == null) {
+                id = stringList.size();
+                strings.put(s, id);
+                stringList.add(s);
+            }
+            return id;
+        }
+
+        public void writeTo(Path file) throws IOException {
+            if(image < 0)
+                image = intern("");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(stringList.size());
+                for (String s : stringList) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.writeInt(image);
+                out.writeInt(placeCount);
+                for (int i = 0; i < placeCount; i++) {
+                    out.writeInt(placeNames[i]);
+                    out.writeDouble(coordinates[2 * i]);
+                    out.writeDouble(coordinates[2 * i + 1]);
+                }
+                out.writeInt(connectionCount);
+                for (int i = 0; i < 4 * connectionCount; i++)
+                    out.writeInt(connections[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.*;
+
+// A batch of nodes and connections for Graph.addAll, which adds all of them
+// at once: the batch is checked against the graph before anything changes,
+// so a bad connection leaves the graph as it was, and listeners hear about
+// the new nodes and connections only once all of them are in. A connection
+// between nodes that are already connected, in the graph or earlier in the
+// batch, is skipped rather than refused, so a file that lists every
+// connection from both of its ends can be loaded as it is. Nodes that are
+// already in the graph are skipped too.
+public class GraphBuilder<T> {
+
+    private final Set<T> nodes;
+    private Object[] from;
+    private Object[] to;
+    private String[] names;
+    private int[] weights;
+    private int connections;
+
+    public GraphBuilder() {
+        this(16, 16);
+    }
+
+    // Sized for this many nodes and connections, it grows past them.
+    public GraphBuilder(int expectedNodes, int expectedConnections) {
+        nodes = new LinkedHashSet<>(capacity(expectedNodes));
+        int length = Math.max(expectedConnections, 4);
+        from = new Object[length];
+        to = new Object[length];
+        names = new String[length];
+        weights = new int[length];
+    }
+
+    public GraphBuilder<T> add(T node) {
+        nodes.add(Objects.requireNonNull(node));
+        return this;
+    }
+
+    public GraphBuilder<T> connect(T node1, T node2, String name, int weight) {
+        if(weight<0)
+            throw new IllegalArgumentException();
+        if(connections == weights.length) {
+            int length = connections * 2;
+            from = Arrays.copyOf(from, length);
+            to = Arrays.copyOf(to, length);
+            names = Arrays.copyOf(names, length);
+            weights = Arrays.copyOf(weights, length);
+        }
+        from[connections] = Objects.requireNonNull(node1);
+        to[connections] = Objects.requireNonNull(node2);
+        names[connections] = name;
+        weights[connections] = weight;
+        connections++;
+        return this;
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    public int connectionCount() {
+        return connections;
+    }
+
+    // Empties the batch, for example after it has been added.
+    public void clear() {
+        nodes.clear();
+        Arrays.fill(from, 0, connections, null);
+        Arrays.fill(to, 0, connections, null);
+        Arrays.fill(names, 0, connections, null);
+        connections = 0;
+    }
+
+    Set<T> nodes() {
+        return nodes;
+    }
+
+    @SuppressWarnings("unchecked")
+    T from(int i) {
+        return (T) from[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    T to(int i) {
+        return (T) to[i];
+    }
+
+    String name(int i) {
+        return names[i];
+    }
+
+    int weight(int i) {
+        return weights[i];
+    }
+
+    // Throws NoSuchElementException, before the graph is changed, if a
+    // connection has an end that is neither in the graph nor in the batch.
+    void check(Set<T> existing) {
+        for (int i = 0; i < connections; i++)
+            if(!existing.contains(from(i)) && !nodes.contains(from(i)) || !existing.contains(to(i)) && !nodes.contains(to(i)))
+                throw new NoSuchElementException();
+    }
+
+    // Adds the batch one call at a time, for graphs without a faster way.
+    static <T> void addEach(Graph<T> graph, GraphBuilder<T> batch) {
+        batch.check(graph.getNodes());
+        for (T node : batch.nodes)
+            graph.add(node);
+        for (int i = 0; i < batch.connections; i++)
+            if(graph.getEdgeBetween(batch.from(i), batch.to(i)) == null)
+                graph.connect(batch.from(i), batch.to(i), batch.names[i], batch.weights[i]);
+    }
+
+    // Initial capacity of a hash map that holds this many entries without
+    // growing.
+    static int capacity(int entries) {
+        return Math.max(4, (int) (entries / 0.75f) + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "GraphBuilder[" + nodes.size() + " nodes, " + connections + " connections]";
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Synthetic maps for benchmarks. Places are spread over a 1000 x 1000 area
+// and connection weights are the rounded up distance times a random factor
+// between 1 and 2, so EuclideanHeuristic with scale 1 is admissible.
+public final class GraphGenerator {
+
+    private static final double SIZE = 1000;
+
+    private GraphGenerator() {
+    }
+
+    // Square grid with about the given number of connections.
+    public static Graph<Place> grid(int edges, long seed) {
+        Random random = new Random(seed);
+        int side = Math.max(2, (int) Math.ceil(Math.sqrt(edges / 2.0)));
+        double step = SIZE / side;
+        Graph<Place> graph = new ListGraph<>();
+        Place[] points = new Place[side * side];
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                Place p = new Place("g" + row + "_" + col, col * step, row * step);
+                points[row * side + col] = p;
+                graph.add(p);
+            }
+        }
+        int added = 0;
+        for (int row = 0; row < side && added < edges; row++) {
+            for (int col = 0; col < side && added < edges; col++) {
+                Place p = points[row * side + col];
+                if(col + 1 < side) {
+                    connect(graph, p, points[row * side + col + 1], random);
+                    added++;
+                }
+                if(row + 1 < side && added < edges) {
+                    connect(graph, p, points[(row + 1) * side + col], random);
+                    added++;
+                }
+            }
+        }
+        return graph;
+    }
+
+    // Random places connected to every other place within a radius chosen to
+    // give an average degree of about 8.
+    public static Graph<Place> randomGeometric(int edges, long seed) {
+        Random random = new Random(seed);
+        int n = Math.max(2, edges / 4);
+        double radius = SIZE * Math.sqrt(8.0 / (Math.PI * n));
+        int cells = Math.max(1, (int) (SIZE / radius));
+        double cellSize = SIZE / cells;
+
+        Graph<Place> graph = new ListGraph<>();
+        Place[] points = new Place[n];
+        int[] cellOf = new int[n];
+        int[] cellStart = new int[cells * cells + 1];
+        for (int i = 0; i < n; i++) {
+            points[i] = new Place("r" + i, random.nextDouble() * SIZE, random.nextDouble() * SIZE);
+            graph.add(points[i]);
+            cellOf[i] = cell(points[i].getX(), cellSize, cells) * cells + cell(points[i].getY(), cellSize, cells);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++)
+            cellStart[c + 1] += cellStart[c];
+        int[] byCell = new int[n];
+        int[] fill = Arrays.copyOf(cellStart, cells * cells);
+        for (int i = 0; i < n; i++)
+            byCell[fill[cellOf[i]]++] = i;
+
+        int added = 0;
+        for (int i = 0; i < n && added < edges; i++) {
+            int cx = cellOf[i] / cells;
+            int cy = cellOf[i] % cells;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int x = cx + dx;
+                    int y = cy + dy;
+                    if(x < 0 || y < 0 || x >= cells || y >= cells)
+                        continue;
+                    int c = x * cells + y;
+                    for (int k = cellStart[c]; k < cellStart[c + 1] && added < edges; k++) {
+                        int j = byCell[k];
+                        if(j > i && distance(points[i], points[j]) <= radius) {
+                            connect(graph, points[i], points[j], random);
+                            added++;
+                        }
+                    }
+                }
+            }
+        }
+        return graph;
+    }
+
+    // Barabasi-Albert preferential attachment, every new place connects to
+    // four existing places picked in proportion to their degree.
+    public static Graph<Place> scaleFree(int edges, long seed) {
+        Random random = new Random(seed);
+        int perNode = 4;
+        int n = Math.max(perNode + 1, edges / perNode + 1);
+        Graph<Place> graph = new ListGraph<>();
+        Place[] points = new Place[n];
+        int[] endpoints = new int[2 * (edges + perNode * perNode)];
+        int endpointCount = 0;
+        int added = 0;
+        for (int i = 0; i < n && added < edges; i++) {
+            points[i] = new Place("s" + i, random.nextDouble() * SIZE, random.nextDouble() * SIZE);
+            graph.add(points[i]);
+            if(i == 0)
+                continue;
+            int links = Math.min(perNode, i);
+            for (int l = 0; l < links && added < edges; l++) {
+                int j = endpointCount == 0 ? random.nextInt(i) : endpoints[random.nextInt(endpointCount)];
+                if(j == i || graph.getEdgeBetween(points[i], points[j]) != null)
+                    j = random.nextInt(i);
+                if(graph.getEdgeBetween(points[i], points[j]) != null)
+                    continue;
+                connect(graph, points[i], points[j], random);
+                endpoints[endpointCount++] = i;
+                endpoints[endpointCount++] = j;
+                added++;
+            }
+        }
+        return graph;
+    }
+
+    private static int cell(double coordinate, double cellSize, int cells) {
+        return Math.min(cells - 1, (int) (coordinate / cellSize));
+    }
+
+    private static double distance(Place a, Place b) {
+        return Math.hypot(a.getX() - b.getX(), a.getY() - b.getY());
+    }
+
+    private static void connect(Graph<Place> graph, Place a, Place b, Random random) {
+        int weight = (int) Math.ceil(distance(a, b) * (1 + random.nextDouble()));
+        graph.connect(a, b, a.getName() + "-" + b.getName(), weight);
+    }
+}
@@ -0,0 +1,25 @@
+// Told about each change to a graph right after it has been made, on the
+// thread that made it. Removing a node first disconnects each of its
+// connections, then reports the node itself.
+public interface GraphListener<T> {
+
+    default void nodeAdded(T node) {
+    }
+
+    default void nodeRemoved(T node) {
+    }
+
+    default void connected(T node1, T node2, int weight) {
+    }
+
+    default void disconnected(T node1, T node2, int weight) {
+    }
+
+    default void weightChanged(T node1, T node2, int oldWeight, int newWeight) {
+    }
+
+    // Every node and connection was removed at once.
+    default void cleared() {
+    }
+
+}
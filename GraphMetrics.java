@@ -0,0 +1,285 @@
+import jdk.jfr.*;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters and histograms for path searches, loads and saves.
+// They are off by default so that searches only pay for their SearchStats;
+// turn them on with -Dpathfinder.metrics=true or the Enabled attribute of the
+// pathfinder:type=GraphMetrics MBean. With tracing on, each search also
+// records the nodes it expands in its SearchStats, which is slow.
+//
+// Searches, loads and saves are also reported as the JFR events
+// pathfinder.Search, pathfinder.Load and pathfinder.Save whenever a
+// recording has them enabled, independently of the switch above.
+public final class GraphMetrics implements GraphMetricsMXBean {
+
+    public static final String OBJECT_NAME = "pathfinder:type=GraphMetrics";
+
+    private static final GraphMetrics INSTANCE = new GraphMetrics();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile boolean enabled = Boolean.getBoolean("pathfinder.metrics");
+    private static volatile boolean traceEnabled;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodesExpanded = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final Histogram searchNanos = new Histogram();
+    private final Histogram expanded = new Histogram();
+    private final Histogram queuePeaks = new Histogram();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadedConnections = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    private final LongAdder saveNanos = new LongAdder();
+
+    private GraphMetrics() {
+    }
+
+    public static GraphMetrics get() {
+        return INSTANCE;
+    }
+
+    // Makes the metrics visible to JMX clients such as jconsole, calling it
+    // again does nothing.
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered.
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean isTraceOn() {
+        return traceEnabled;
+    }
+
+    // Bytes allocated so far by the calling thread, or -1 while disabled.
+    static long allocatedBytes() {
+        return enabled ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    static void searchFinished(SearchStats stats) {
+        SearchEvent event = new SearchEvent();
+        if(event.shouldCommit()) {
+            event.mode = String.valueOf(stats.getMode());
+            event.nodesExpanded = stats.getNodesExpanded();
+            event.edgesRelaxed = stats.getEdgesRelaxed();
+            event.queuePeak = stats.getQueuePeak();
+            event.searchNanos = stats.getNanos();
+            event.allocatedBytes = stats.getAllocatedBytes();
+            event.commit();
+        }
+        if(!enabled)
+            return;
+        INSTANCE.searches.increment();
+        INSTANCE.nodesExpanded.add(stats.getNodesExpanded());
+        INSTANCE.edgesRelaxed.add(stats.getEdgesRelaxed());
+        if(stats.getAllocatedBytes() > 0)
+            INSTANCE.allocated.add(stats.getAllocatedBytes());
+        INSTANCE.searchNanos.record(stats.getNanos());
+        INSTANCE.expanded.record(stats.getNodesExpanded());
+        INSTANCE.queuePeaks.record(stats.getQueuePeak());
+    }
+
+    static void loadFinished(String format, LoadStats stats) {
+        LoadEvent event = new LoadEvent();
+        if(event.shouldCommit()) {
+            event.format = format;
+            event.places = stats.getPlaces();
+            event.connections = stats.getConnections();
+            event.loadNanos = stats.getNanos();
+            event.commit();
+        }
+        if(!enabled)
+            return;
+        INSTANCE.loads.increment();
+        INSTANCE.loadedConnections.add(stats.getConnections());
+        INSTANCE.loadNanos.add(stats.getNanos());
+    }
+
+    static void saveFinished(String kind, long bytes, long nanos) {
+        SaveEvent event = new SaveEvent();
+        if(event.shouldCommit()) {
+            event.kind = kind;
+            event.bytes = bytes;
+            event.saveNanos = nanos;
+            event.commit();
+        }
+        if(!enabled)
+            return;
+        INSTANCE.saves.increment();
+        INSTANCE.savedBytes.add(bytes);
+        INSTANCE.saveNanos.add(nanos);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return traceEnabled;
+    }
+
+    @Override
+    public void setTraceEnabled(boolean on) {
+        traceEnabled = on;
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        return nodesExpanded.sum();
+    }
+
+    @Override
+    public long getEdgesRelaxed() {
+        return edgesRelaxed.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocated.sum();
+    }
+
+    @Override
+    public long getSearchP50Micros() {
+        return searchNanos.percentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getSearchP99Micros() {
+        return searchNanos.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getNodesExpandedP50() {
+        return expanded.percentile(0.5);
+    }
+
+    @Override
+    public long getNodesExpandedP99() {
+        return expanded.percentile(0.99);
+    }
+
+    @Override
+    public long getQueuePeakP99() {
+        return queuePeaks.percentile(0.99);
+    }
+
+    @Override
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public long getLoadedConnections() {
+        return loadedConnections.sum();
+    }
+
+    @Override
+    public long getLoadMicros() {
+        return loadNanos.sum() / 1000;
+    }
+
+    @Override
+    public long getSaves() {
+        return saves.sum();
+    }
+
+    @Override
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    @Override
+    public long getSaveMicros() {
+        return saveNanos.sum() / 1000;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { searches, nodesExpanded, edgesRelaxed, allocated,
+                loads, loadedConnections, loadNanos, saves, savedBytes, saveNanos })
+            adder.reset();
+        searchNanos.reset();
+        expanded.reset();
+        queuePeaks.reset();
+    }
+
+    @Override
+    public String toString() {
+        return searches.sum() + " searches, p50 " + getSearchP50Micros() + " us, p99 " + getSearchP99Micros()
+                + " us, " + nodesExpanded.sum() + " nodes expanded, " + loads.sum() + " loads, " + saves.sum() + " saves";
+    }
+
+    @Name("pathfinder.Search")
+    @Label("Path Search")
+    @Category("PathFinder")
+    @StackTrace(false)
+    static class SearchEvent extends Event {
+        @Label("Mode")
+        String mode;
+        @Label("Nodes Expanded")
+        int nodesExpanded;
+        @Label("Edges Relaxed")
+        int edgesRelaxed;
+        @Label("Queue Peak")
+        int queuePeak;
+        @Label("Search Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long searchNanos;
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    @Name("pathfinder.Load")
+    @Label("Graph Load")
+    @Category("PathFinder")
+    static class LoadEvent extends Event {
+        @Label("Format")
+        String format;
+        @Label("Places")
+        int places;
+        @Label("Connections")
+        int connections;
+        @Label("Load Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long loadNanos;
+    }
+
+    @Name("pathfinder.Save")
+    @Label("Graph Save")
+    @Category("PathFinder")
+    static class SaveEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Save Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long saveNanos;
+    }
+}
@@ -0,0 +1,45 @@
+// Management interface of GraphMetrics, registered as
+// pathfinder:type=GraphMetrics. Times are in microseconds.
+public interface GraphMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    boolean isTraceEnabled();
+
+    void setTraceEnabled(boolean enabled);
+
+    long getSearches();
+
+    long getNodesExpanded();
+
+    long getEdgesRelaxed();
+
+    long getAllocatedBytes();
+
+    long getSearchP50Micros();
+
+    long getSearchP99Micros();
+
+    long getNodesExpandedP50();
+
+    long getNodesExpandedP99();
+
+    long getQueuePeakP99();
+
+    long getLoads();
+
+    long getLoadedConnections();
+
+    long getLoadMicros();
+
+    long getSaves();
+
+    long getSavedBytes();
+
+    long getSaveMicros();
+
+    void reset();
+
+}
@@ -0,0 +1,29 @@
+import java.util.HashSet;
+import java.util.Set;
+
+// Receives the contents of a graph file in file order: the image first, then
+// every place, then every connection.
+public interface GraphSink {
+
+    void image(String location);
+
+    void place(String name, double x, double y);
+
+    void connection(String from, String to, String name, int weight);
+
+    // Sends the graph to the sink, each connection once.
+    static <T extends Vertex> void export(String image, Graph<T> graph, GraphSink sink) {
+        sink.image(image);
+        for (T node : graph.getNodes())
+            sink.place(node.getName(), node.getX(), node.getY());
+
+        Set<T> done = new HashSet<>();
+        for (T node : graph.getNodes()) {
+            for (Edge<T> e : graph.getEdgesFrom(node))
+                if(!done.contains(e.getDestination()))
+                    sink.connection(node.getName(), e.getDestination().getName(), e.getName(), e.getWeight());
+            done.add(node);
+        }
+    }
+
+}
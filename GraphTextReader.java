@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.io.Reader;
+
+// Streaming parser for the semicolon separated .graph format:
+//   line 1     image location
+//   line 2     name;x;y;name;x;y;...
+//   line 3..   from;to;name;weight
+// Tokens are read straight from a fixed size buffer, so the place line is
+// never held in memory as a whole. Parsing stops at the first empty line.
+public class GraphTextReader {
+
+    private static final int EOF = -1;
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position;
+    private int limit;
+    private final StringBuilder token = new StringBuilder();
+    private int delimiter;
+
+    public GraphTextReader(Reader in) {
+        this.in = in;
+    }
+
+    public LoadStats read(GraphSink sink) throws IOException {
+        long start = System.nanoTime();
+        int places = 0;
+        int connections = 0;
+
+        nextToken();
+        sink.image(token.toString().trim());
+        if(delimiter != '\n')
+            skipLine();
+
+        while(delimiter != EOF) {
+            String name = nextToken().toString().trim();
+            if(name.isEmpty() && delimiter != ';')
+                break;
+            double x = Double.parseDouble(nextToken().toString().trim());
+            double y = Double.parseDouble(nextToken().toString().trim());
+            sink.place(name, x, y);
+            places++;
+            if(delimiter != ';')
+                break;
+        }
+
+        while(delimiter != EOF) {
+            String from = nextToken().toString().trim();
+            if(from.isEmpty() && delimiter != ';')
+                break;
+            String to = nextToken().toString().trim();
+            String name = nextToken().toString();
+            int weight = parseInt(nextToken());
+            sink.connection(from, to, name, weight);
+            connections++;
+            if(delimiter == ';')
+                skipLine();
+        }
+        LoadStats stats = new LoadStats(places, connections, System.nanoTime() - start);
+        GraphMetrics.loadFinished("text", stats);
+        return stats;
+    }
+
+    // Reads up to the next ';', line break or end of input, which is left in delimiter.
+    private StringBuilder nextToken() throws IOException {
+        token.setLength(0);
+        int c;
+        while((c = read()) != EOF && c != ';' && c != '\n')
+            if(c != '\r')
+                token.append((char) c);
+        delimiter = c;
+        return token;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while((c = read()) != EOF && c != '\n');
+        delimiter = c;
+    }
+
+    private int read() throws IOException {
+        if(position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if(limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private static int parseInt(CharSequence s) {
+        int start = 0;
+        int end = s.length();
+        while(start < end && Character.isWhitespace(s.charAt(start)))
+            start++;
+        while(end > start && Character.isWhitespace(s.charAt(end - 1)))
+            end--;
+        return Integer.parseInt(s, start, end, 10);
+    }
+}
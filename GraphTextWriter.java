@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+// Writes the .graph format read by GraphTextReader. All places have to be
+// written before the first connection, which is how GraphSink delivers them.
+public class GraphTextWriter implements GraphSink, AutoCloseable {
+
+    private final PrintWriter out;
+    private boolean firstPlace = true;
+
+    public GraphTextWriter(Writer out) {
+        this.out = new PrintWriter(out);
+    }
+
+    @Override
+    public void image(String location) {
+        out.println(location);
+    }
+
+    @Override
+    public void place(String name, double x, double y) {
+        if(!firstPlace)
+            out.print(';');
+        out.print(name + ";" + x + ";" + y);
+        firstPlace = false;
+    }
+
+    @Override
+    public void connection(String from, String to, String name, int weight) {
+        out.print("\n" + from + ";" + to + ";" + name + ";" + weight);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if(out.checkError())
+            throw new IOException("Could not write graph");
+    }
+}
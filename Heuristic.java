@@ -0,0 +1,11 @@
+public interface Heuristic<T> {
+
+    // Lower bound on the remaining weight from node to target. Returning a
+    // value larger than the true remaining weight makes A* give up optimality.
+    double estimate(T node, T target);
+
+    static <T> Heuristic<T> zero() {
+        return (node, target) -> 0;
+    }
+
+}
@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// Binary min-heap over int ids with decrease-key. Ids are dense, starting at 0,
+// and the backing arrays grow as larger ids are offered.
+class IndexedMinHeap {
+
+    private static final int UNSEEN = -1;
+    private static final int REMOVED = -2;
+
+    private int[] heap;
+    private int[] pos;
+    private double[] keys;
+    private int size;
+
+    private int[] touched;
+    private int touchedCount;
+
+    IndexedMinHeap() {
+        this(16);
+    }
+
+    IndexedMinHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new double[capacity];
+        touched = new int[capacity];
+        Arrays.fill(pos, UNSEEN);
+    }
+
+    // Inserts the id, or lowers its key. Returns false if the id already has
+    // a key that is as low or has been removed from the heap.
+    boolean offer(int id, double key) {
+        ensureCapacity(id);
+        int p = pos[id];
+        if(p == REMOVED)
+            return false;
+        if(p == UNSEEN) {
+            touched[touchedCount++] = id;
+            keys[id] = key;
+            heap[size] = id;
+            pos[id] = size;
+            siftUp(size++);
+            return true;
+        }
+        if(key >= keys[id])
+            return false;
+        keys[id] = key;
+        siftUp(p);
+        return true;
+    }
+
+    int poll() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        int min = heap[0];
+        pos[min] = REMOVED;
+        int last = heap[--size];
+        if(size > 0) {
+            heap[0] = last;
+            pos[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    double peekKey() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        return keys[heap[0]];
+    }
+
+    double getKey(int id) {
+        return keys[id];
+    }
+
+    boolean isSeen(int id) {
+        return id < pos.length && pos[id] != UNSEEN;
+    }
+
+    boolean isRemoved(int id) {
+        return id < pos.length && pos[id] == REMOVED;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Forgets every id seen since the last clear, in time proportional to
+    // the number of ids seen rather than the capacity.
+    void clear() {
+        for (int i = 0; i < touchedCount; i++)
+            pos[touched[i]] = UNSEEN;
+        touchedCount = 0;
+        size = 0;
+    }
+
+    private void ensureCapacity(int id) {
+        if(id < pos.length)
+            return;
+        int capacity = Math.max(id + 1, pos.length * 2);
+        int old = pos.length;
+        heap = Arrays.copyOf(heap, capacity);
+        pos = Arrays.copyOf(pos, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+        Arrays.fill(pos, old, capacity, UNSEEN);
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        double key = keys[id];
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if(keys[p] <= key)
+                break;
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        pos[id] = i;
+    }
+
+    private void siftDown(int i) {
+        int id = heap[i];
+        double key = keys[id];
+        int half = size >>> 1;
+        while(i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if(right < size && keys[heap[right]] < keys[heap[child]])
+                child = right;
+            int c = heap[child];
+            if(key <= keys[c])
+                break;
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+        heap[i] = id;
+        pos[id] = i;
+    }
+}
@@ -0,0 +1,393 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Up to k loopless paths between two nodes, best first by total weight, for
+// offering alternatives to the fastest route. Both methods search the graph
+// in its CsrGraph form, which is built once per call unless the graph already
+// is one.
+//
+// YEN finds exactly the k lowest-weight paths. Each alternative takes one
+// Dijkstra search per node of the path before it, from that node to the
+// target with the part of the path up to it cut off; those searches are
+// independent and run in parallel on the pool. With Lawler's change only the
+// nodes from where the previous path left its own parent are searched from.
+//
+// PENALTY takes one search per alternative: after each path is found the
+// weights of its edges are raised, and the next search finds whatever route
+// is now cheapest. The paths are good, distinct and ordered by their real
+// weight, but need not be the k lowest. It is the one to use on large maps,
+// where the paths are long and Yen's searches many.
+//
+// The cost of every alternative, the searches it took, the nodes they
+// settled and the wall time, is kept next to it.
+public class KShortestPaths<T> {
+
+    public enum Method { YEN, PENALTY }
+
+    // Factor an edge's weight is raised by for every path that uses it.
+    private static final double PENALTY = 1.5;
+    // Penalty searches that may find a path already found, per path asked
+    // for, before giving up on finding k.
+    private static final int PENALTY_TRIES = 3;
+
+    private final Method method;
+    private final List<List<Edge<T>>> paths;
+    private final long[] weights;
+    private final int[] searches;
+    private final long[] nodesSettled;
+    private final long[] nanos;
+
+    private KShortestPaths(Method method, List<List<Edge<T>>> paths, long[] weights, int[] searches, long[] nodesSettled, long[] nanos) {
+        this.method = method;
+        this.paths = paths;
+        this.weights = weights;
+        this.searches = searches;
+        this.nodesSettled = nodesSettled;
+        this.nanos = nanos;
+    }
+
+    public static <T> KShortestPaths<T> find(Graph<T> graph, T from, T to, int k) {
+        return find(graph, from, to, k, Method.YEN, ForkJoinPool.commonPool());
+    }
+
+    public static <T> KShortestPaths<T> find(Graph<T> graph, T from, T to, int k, Method method) {
+        return find(graph, from, to, k, method, ForkJoinPool.commonPool());
+    }
+
+    public static <T> KShortestPaths<T> find(Graph<T> graph, T from, T to, int k, Method method, ForkJoinPool pool) {
+        if(k < 1)
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        CsrGraph<T> csr = graph instanceof CsrGraph ? (CsrGraph<T>) graph : new CsrGraph<>(graph);
+        int source = csr.indexOf(from);
+        int target = csr.indexOf(to);
+        if(source < 0 || target < 0)
+            throw new NoSuchElementException();
+
+        Search search = new Search(csr, k);
+        if(method == Method.YEN)
+            search.yen(source, target, pool);
+        else
+            search.penalty(source, target);
+
+        int found = search.found.size();
+        List<List<Edge<T>>> paths = new ArrayList<>(found);
+        long[] weights = new long[found];
+        for (int i = 0; i < found; i++) {
+            Path path = search.found.get(i);
+            List<Edge<T>> edges = new ArrayList<>(path.edges.length);
+            for (int edge : path.edges)
+                edges.add(new Edge<>(csr.nodeAt(csr.target(edge)), csr.edgeName(edge), csr.weight(edge)));
+            paths.add(Collections.unmodifiableList(edges));
+            weights[i] = path.weight;
+        }
+        return new KShortestPaths<>(method, Collections.unmodifiableList(paths), weights,
+                Arrays.copyOf(search.searches, found), Arrays.copyOf(search.nodesSettled, found), Arrays.copyOf(search.nanos, found));
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    // Fewer than k when there are no more loopless paths, or, with PENALTY,
+    // when the searches kept finding the same ones.
+    public List<List<Edge<T>>> getPaths() {
+        return paths;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public long getWeight(int i) {
+        return weights[i];
+    }
+
+    // Searches run to find path i, path 0 being the fastest route.
+    public int getSearches(int i) {
+        return searches[i];
+    }
+
+    public long getNodesSettled(int i) {
+        return nodesSettled[i];
+    }
+
+    public long getNanos(int i) {
+        return nanos[i];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("KShortestPaths[").append(method);
+        for (int i = 0; i < paths.size(); i++)
+            s.append(i == 0 ? ": " : ", ").append(weights[i]).append(" (").append(searches[i]).append(" searches, ")
+                    .append(nodesSettled[i]).append(" nodes, ").append(nanos[i] / 1000).append(" us)");
+        return s.append(']').toString();
+    }
+
+    // A path as the CSR indexes of its edges, equal to another with the same
+    // edges. deviation is where it leaves the path it was found from.
+    private static class Path implements Comparable<Path> {
+        private final int[] edges;
+        private final long weight;
+        private final int deviation;
+
+        Path(int[] edges, long weight, int deviation) {
+            this.edges = edges;
+            this.weight = weight;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public int compareTo(Path other) {
+            if(weight != other.weight)
+                return Long.compare(weight, other.weight);
+            return Integer.compare(edges.length, other.edges.length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Path && Arrays.equals(edges, ((Path) o).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+    }
+
+    // One call's worth of state. The found paths and the costs are only
+    // touched by the calling thread; the spur searches of Yen's method each
+    // work in the SearchScratch of the pool thread they run on.
+    private static class Search {
+        private final CsrGraph<?> csr;
+        private final List<Path> found = new ArrayList<>();
+        private final int[] searches;
+        private final long[] nodesSettled;
+        private final long[] nanos;
+
+        Search(CsrGraph<?> csr, int k) {
+            this.csr = csr;
+            searches = new int[k];
+            nodesSettled = new long[k];
+            nanos = new long[k];
+        }
+
+        void yen(int source, int target, ForkJoinPool pool) {
+            int k = searches.length;
+            long start = System.nanoTime();
+            Path first;
+            SearchScratch scratch = SearchScratch.acquire();
+            try {
+                Scratch own = new Scratch(scratch, csr.size());
+                first = own.dijkstra(csr, source, target, null, null, 0);
+                record(0, 1, own.settled, start);
+            } finally {
+                scratch.release();
+            }
+            if(first == null)
+                return;
+            found.add(first);
+
+            PriorityQueue<Path> candidates = new PriorityQueue<>();
+            Set<Path> seen = new HashSet<>();
+            seen.add(first);
+            while(found.size() < k) {
+                start = System.nanoTime();
+                Path previous = found.get(found.size() - 1);
+                int[] nodes = nodesOf(previous, source);
+                List<Spur> spurs = pool.submit(() -> IntStream.range(previous.deviation, previous.edges.length).parallel()
+                        .mapToObj(i -> spur(previous, nodes, i, target))
+                        .collect(Collectors.toList())).join();
+                long settled = 0;
+                for (Spur spur : spurs) {
+                    settled += spur.settled;
+                    if(spur.path != null && seen.add(spur.path))
+                        candidates.add(spur.path);
+                }
+                if(candidates.isEmpty())
+                    return;
+                record(found.size(), spurs.size(), settled, start);
+                found.add(candidates.poll());
+            }
+        }
+
+        // The best path that shares the first i edges of the previous one and
+        // then leaves it, or null when there is none.
+        private Spur spur(Path previous, int[] nodes, int i, int target) {
+            SearchScratch scratch = SearchScratch.acquire();
+            try {
+                return spur(new Scratch(scratch, csr.size()), previous, nodes, i, target);
+            } finally {
+                scratch.release();
+            }
+        }
+
+        private Spur spur(Scratch own, Path previous, int[] nodes, int i, int target) {
+            // Every found path that starts out the same way as the previous
+            // one has its next edge ruled out, so the spur goes somewhere new.
+            int[] bannedEdges = new int[found.size()];
+            int banned = 0;
+            for (Path path : found)
+                if(path.edges.length > i && Arrays.equals(path.edges, 0, i, previous.edges, 0, i))
+                    bannedEdges[banned++] = path.edges[i];
+            // The nodes before the spur node are ruled out, so that the path
+            // stays loopless.
+            for (int j = 0; j < i; j++)
+                own.blocked[nodes[j]] = true;
+            long rootWeight = 0;
+            for (int j = 0; j < i; j++)
+                rootWeight += csr.weight(previous.edges[j]);
+            Path tail = own.dijkstra(csr, nodes[i], target, null, bannedEdges, banned);
+            for (int j = 0; j < i; j++)
+                own.blocked[nodes[j]] = false;
+            if(tail == null)
+                return new Spur(null, own.settled);
+
+            int[] edges = Arrays.copyOf(previous.edges, i + tail.edges.length);
+            System.arraycopy(tail.edges, 0, edges, i, tail.edges.length);
+            return new Spur(new Path(edges, rootWeight + tail.weight, i), own.settled);
+        }
+
+        void penalty(int source, int target) {
+            int k = searches.length;
+            double[] penalized = new double[csr.edgeCount()];
+            for (int i = 0; i < penalized.length; i++)
+                penalized[i] = csr.weight(i);
+            Set<Path> seen = new HashSet<>();
+            SearchScratch scratch = SearchScratch.acquire();
+            try {
+                Scratch own = new Scratch(scratch, csr.size());
+                long start = System.nanoTime();
+                int runs = 0;
+                long settled = 0;
+                for (int tries = 0; found.size() < k && tries < k * PENALTY_TRIES; tries++) {
+                    Path path = own.dijkstra(csr, source, target, penalized, null, 0);
+                    runs++;
+                    settled += own.settled;
+                    if(path == null)
+                        return;
+                    if(seen.add(path)) {
+                        record(found.size(), runs, settled, start);
+                        found.add(path);
+                        start = System.nanoTime();
+                        runs = 0;
+                        settled = 0;
+                    }
+                    for (int edge : path.edges) {
+                        penalized[edge] *= PENALTY;
+                        int back = csr.edgeIndex(csr.target(edge), csr.sourceOf(edge));
+                        if(back >= 0)
+                            penalized[back] *= PENALTY;
+                    }
+                }
+            } finally {
+                scratch.release();
+            }
+            sortFound();
+        }
+
+        // Puts the paths in order of weight, their costs with them.
+        private void sortFound() {
+            Integer[] order = new Integer[found.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> found.get(a).compareTo(found.get(b)));
+            List<Path> paths = new ArrayList<>(found);
+            int[] runs = searches.clone();
+            long[] settled = nodesSettled.clone();
+            long[] times = nanos.clone();
+            for (int i = 0; i < order.length; i++) {
+                found.set(i, paths.get(order[i]));
+                searches[i] = runs[order[i]];
+                nodesSettled[i] = settled[order[i]];
+                nanos[i] = times[order[i]];
+            }
+        }
+
+        private void record(int i, int runs, long settled, long start) {
+            searches[i] = runs;
+            nodesSettled[i] = settled;
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        private int[] nodesOf(Path path, int source) {
+            int[] nodes = new int[path.edges.length + 1];
+            nodes[0] = source;
+            for (int i = 0; i < path.edges.length; i++)
+                nodes[i + 1] = csr.target(path.edges[i]);
+            return nodes;
+        }
+    }
+
+    private static class Spur {
+        private final Path path;
+        private final int settled;
+
+        Spur(Path path, int settled) {
+            this.path = path;
+            this.settled = settled;
+        }
+    }
+
+    // Queue and marks for one Dijkstra search at a time, taken from the
+    // thread's SearchScratch. blocked is left all false between searches.
+    private static class Scratch {
+        private final IndexedMinHeap queue;
+        private final int[] previousEdge;
+        private final boolean[] blocked;
+        private int settled;
+
+        Scratch(SearchScratch scratch, int n) {
+            queue = scratch.queue();
+            previousEdge = scratch.previous(n);
+            blocked = scratch.blocked(n);
+        }
+
+        // Lowest-weight path that avoids the blocked nodes and the first
+        // banned edges out of the source, by the penalized weights when
+        // there are some. The path's weight is its real one.
+        Path dijkstra(CsrGraph<?> csr, int source, int target, double[] penalized, int[] bannedEdges, int banned) {
+            queue.clear();
+            queue.offer(source, 0);
+            settled = 0;
+            while(!queue.isEmpty()) {
+                int current = queue.poll();
+                settled++;
+                if(current == target)
+                    return gatherPath(csr, source, target);
+
+                double distance = queue.getKey(current);
+                for (int i = csr.firstEdge(current); i < csr.firstEdge(current + 1); i++) {
+                    int next = csr.target(i);
+                    if(blocked[next] || current == source && isBanned(i, bannedEdges, banned))
+                        continue;
+                    if(queue.offer(next, distance + (penalized != null ? penalized[i] : csr.weight(i))))
+                        previousEdge[next] = i;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isBanned(int edge, int[] bannedEdges, int banned) {
+            for (int i = 0; i < banned; i++)
+                if(bannedEdges[i] == edge)
+                    return true;
+            return false;
+        }
+
+        private Path gatherPath(CsrGraph<?> csr, int source, int target) {
+            int length = 0;
+            for (int current = target; current != source; current = csr.sourceOf(previousEdge[current]))
+                length++;
+            int[] edges = new int[length];
+            long weight = 0;
+            for (int current = target; current != source; current = csr.sourceOf(previousEdge[current])) {
+                edges[--length] = previousEdge[current];
+                weight += csr.weight(previousEdge[current]);
+            }
+            return new Path(edges, weight, 0);
+        }
+    }
+}
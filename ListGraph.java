@@ -2,7 +2,36 @@ import java.util.*;
 
 public class ListGraph<T> implements Graph<T>{
 
-    private final Map<T, Set<Edge<T>>> nodes = new HashMap<>();
+    // Edges from each node, keyed on their destination.
+    private final Map<T, Map<T, Edge<T>>> nodes;
+    // Null until one is set. A* then uses the admissible EuclideanHeuristic
+    // of the graph as it is, since a fixed scale overestimates on maps whose
+    // weights are lower than their distances. Its scale follows each edit,
+    // and is only scanned for again when the connection that set it is raised
+    // or removed.
+    private Heuristic<T> heuristic;
+    private EuclideanHeuristic.Scale scale = EuclideanHeuristic.Scale.EMPTY;
+    private SearchStats lastSearchStats = new SearchStats();
+    private ConnectivityIndex<T> connectivity;
+    private final Map<PathMode, PathIndex<T>> pathIndexes = new EnumMap<>(PathMode.class);
+    private int modifications;
+    private final List<GraphListener<T>> listeners = new ArrayList<>();
+
+    public ListGraph() {
+        nodes = new HashMap<>();
+    }
+
+    // Read-only view over an adjacency map that nobody changes any more,
+    // used for the published versions of a ConcurrentGraph.
+    ListGraph(Map<T, Map<T, Edge<T>>> nodes, Heuristic<T> heuristic, EuclideanHeuristic.Scale scale) {
+        this.nodes = nodes;
+        this.heuristic = heuristic;
+        this.scale = scale;
+    }
+
+    Map<T, Map<T, Edge<T>>> adjacency() {
+        return nodes;
+    }
 
     private void catchNoSuchNode(T node){
         if(!nodes.containsKey(node))
@@ -11,7 +40,76 @@ public class ListGraph<T> implements Graph<T>{
 
     @Override
     public void add(T node) {
-        nodes.putIfAbsent(node, new HashSet<>());
+        if(nodes.putIfAbsent(node, new HashMap<>()) != null)
+            return;
+        modified();
+        if(connectivity != null)
+            connectivity.add(node);
+        for (GraphListener<T> listener : listeners)
+            listener.nodeAdded(node);
+    }
+
+    // Two passes over the batch. The first checks it and counts the
+    // connections of every new node, so that its edge map is made large
+    // enough at once. The second adds the connections, skipping one whose
+    // ends already have one with a single map lookup.
+    @Override
+    public void addAll(GraphBuilder<T> batch) {
+        Map<T, int[]> degrees = new HashMap<>(GraphBuilder.capacity(batch.nodeCount()));
+        for (T node : batch.nodes())
+            if(!nodes.containsKey(node))
+                degrees.put(node, new int[1]);
+        for (int i = 0; i < batch.connectionCount(); i++) {
+            count(degrees, batch.from(i));
+            count(degrees, batch.to(i));
+        }
+
+        List<T> added = new ArrayList<>(degrees.size());
+        for (T node : batch.nodes()) {
+            int[] degree = degrees.get(node);
+            if(degree != null) {
+                nodes.put(node, new HashMap<>(GraphBuilder.capacity(degree[0])));
+                added.add(node);
+            }
+        }
+        int[] connected = new int[batch.connectionCount()];
+        int count = 0;
+        for (int i = 0; i < batch.connectionCount(); i++) {
+            T node1 = batch.from(i);
+            T node2 = batch.to(i);
+            Map<T, Edge<T>> edges = nodes.get(node1);
+            if(edges.containsKey(node2))
+                continue;
+            edges.put(node2, new Edge<>(node2, batch.name(i), batch.weight(i)));
+            nodes.get(node2).put(node1, new Edge<>(node1, batch.name(i), batch.weight(i)));
+            connected[count++] = i;
+        }
+        if(added.isEmpty() && count == 0)
+            return;
+
+        for (int j = 0; j < count; j++)
+            scale = scale.connected(batch.from(connected[j]), batch.to(connected[j]), batch.weight(connected[j]));
+        modified();
+        if(connectivity != null) {
+            for (T node : added)
+                connectivity.add(node);
+            for (int j = 0; j < count; j++)
+                connectivity.union(batch.from(connected[j]), batch.to(connected[j]));
+        }
+        for (GraphListener<T> listener : listeners) {
+            for (T node : added)
+                listener.nodeAdded(node);
+            for (int j = 0; j < count; j++)
+                listener.connected(batch.from(connected[j]), batch.to(connected[j]), batch.weight(connected[j]));
+        }
+    }
+
+    private void count(Map<T, int[]> degrees, T node) {
+        int[] degree = degrees.get(node);
+        if(degree != null)
+            degree[0]++;
+        else
+            catchNoSuchNode(node);
     }
 
     @Override
@@ -21,16 +119,30 @@ public class ListGraph<T> implements Graph<T>{
         if(getEdgeBetween(node1, node2) != null)
             throw new IllegalStateException();
 
-        nodes.get(node1).add(new Edge<>(node2, name, weight));
-        nodes.get(node2).add(new Edge<>(node1, name, weight));
+        nodes.get(node1).put(node2, new Edge<>(node2, name, weight));
+        nodes.get(node2).put(node1, new Edge<>(node1, name, weight));
+        scale = scale.connected(node1, node2, weight);
+        modified();
+        if(connectivity != null)
+            connectivity.union(node1, node2);
+        for (GraphListener<T> listener : listeners)
+            listener.connected(node1, node2, weight);
     }
 
     @Override
     public void setConnectionWeight(T node1, T node2, int weight) {
         if(weight<0)
             throw new IllegalArgumentException();
-        getEdgeBetween(node1, node2).setWeight(weight);
-        getEdgeBetween(node2, node1).setWeight(weight);
+        Edge<T> edge = getEdgeBetween(node1, node2);
+        if(edge == null)
+            throw new IllegalStateException();
+        int oldWeight = edge.getWeight();
+        edge.setWeight(weight);
+        nodes.get(node2).get(node1).setWeight(weight);
+        scale = scale.weightChanged(node1, node2, oldWeight, weight);
+        modified();
+        for (GraphListener<T> listener : listeners)
+            listener.weightChanged(node1, node2, oldWeight, weight);
     }
 
     @Override
@@ -40,7 +152,7 @@ public class ListGraph<T> implements Graph<T>{
 
     @Override
     public Collection<Edge<T>> getEdgesFrom(T node) {
-        return Collections.unmodifiableCollection(nodes.get(node));
+        return Collections.unmodifiableCollection(nodes.get(node).values());
     }
 
     @Override
@@ -48,11 +160,7 @@ public class ListGraph<T> implements Graph<T>{
         catchNoSuchNode(node1);
         catchNoSuchNode(node2);
 
-        for (Edge<T> e : nodes.get(node1))
-            if (e.getDestination().equals(node2))
-                return e;
-
-        return null;
+        return nodes.get(node1).get(node2);
     }
 
     @Override
@@ -60,40 +168,119 @@ public class ListGraph<T> implements Graph<T>{
         catchNoSuchNode(node1);
         catchNoSuchNode(node2);
 
-        if(getEdgeBetween(node1, node2) == null)
+        Edge<T> edge = nodes.get(node1).remove(node2);
+        if(edge == null)
             throw new IllegalStateException();
-
-        nodes.get(node1).removeIf(e -> e.getDestination().equals(node2));
-        nodes.get(node2).removeIf(e -> e.getDestination().equals(node1));
+        nodes.get(node2).remove(node1);
+        scale = scale.disconnected(node1, node2);
+        modified();
+        if(connectivity != null)
+            connectivity.invalidate();
+        for (GraphListener<T> listener : listeners)
+            listener.disconnected(node1, node2, edge.getWeight());
     }
 
     @Override
     public void remove(T node) {
         catchNoSuchNode(node);
 
-        for (Edge<T> d : nodes.get(node))
-            nodes.get(d.getDestination()).removeIf(e->e.getDestination().equals(node));
+        if(listeners.isEmpty()) {
+            for (T d : nodes.get(node).keySet())
+                if(!d.equals(node))
+                    nodes.get(d).remove(node);
+        } else {
+            // One connection at a time, so listeners see a consistent graph.
+            for (T d : new ArrayList<>(nodes.get(node).keySet()))
+                disconnect(node, d);
+        }
 
-        nodes.keySet().removeIf(n->n.equals(node));
+        nodes.remove(node);
+        scale = scale.removed(node);
+        modified();
+        if(connectivity != null)
+            connectivity.invalidate();
+        for (GraphListener<T> listener : listeners)
+            listener.nodeRemoved(node);
     }
 
     public void removeAll() {
         nodes.clear();
+        scale = EuclideanHeuristic.Scale.EMPTY;
+        modified();
+        if(connectivity != null)
+            connectivity.clear();
+        for (GraphListener<T> listener : listeners)
+            listener.cleared();
+    }
+
+    @Override
+    public void addListener(GraphListener<T> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    @Override
+    public void removeListener(GraphListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    // Every change makes the attached path indexes stale, so they are dropped
+    // and their modes fall back to searching.
+    private void modified() {
+        modifications++;
+        pathIndexes.clear();
+    }
+
+    // Counts the changes made to the graph, so that an index built in the
+    // background can tell whether it still matches.
+    public int getModificationCount() {
+        return modifications;
+    }
+
+    public void setPathIndex(PathMode mode, PathIndex<T> index) {
+        pathIndexes.put(mode, Objects.requireNonNull(index));
+    }
+
+    // Keeps a union-find index of the components up to date so that
+    // pathExists does not have to search. Disconnect and remove make the
+    // index stale, it is then rebuilt by the next pathExists.
+    public void setConnectivityIndexEnabled(boolean enabled) {
+        if(!enabled) {
+            connectivity = null;
+        } else if(connectivity == null) {
+            connectivity = new ConnectivityIndex<>();
+            connectivity.invalidate();
+        }
     }
 
     @Override
     public boolean pathExists(T from, T to) {
-        Set<T> visited = new HashSet<>();
-        depthFirstSearch(from, visited);
-        return visited.contains(to);
+        if(!nodes.containsKey(from) || !nodes.containsKey(to))
+            return false;
+
+        if(connectivity != null) {
+            if(connectivity.isStale())
+                connectivity.rebuild(nodes);
+            return connectivity.connected(from, to);
+        }
+        return depthFirstSearch(from, to);
     }
 
-    private void depthFirstSearch(T next , Set<T> visited) {
-        visited.add(next);
-        for (Edge<T> e : nodes.get(next)){
-            if (!visited.contains(e.getDestination()))
-                depthFirstSearch(e.getDestination(), visited);
+    private boolean depthFirstSearch(T from, T to) {
+        Set<T> visited = new HashSet<>();
+        ArrayDeque<T> stack = new ArrayDeque<>();
+        visited.add(from);
+        stack.push(from);
+
+        while(!stack.isEmpty()) {
+            T current = stack.pop();
+            if (current.equals(to))
+                return true;
+            for (Edge<T> e : nodes.get(current).values()) {
+                if (visited.add(e.getDestination()))
+                    stack.push(e.getDestination());
+            }
         }
+        return false;
     }
 
     private List<Edge<T>> gatherPath(T from, T to, Map<T, T> path) {
@@ -113,7 +300,7 @@ public class ListGraph<T> implements Graph<T>{
 //        return null;
 //    }
 
-    private List<Edge<T>> getShortestPath(T from, T to) {
+    private List<Edge<T>> getShortestPath(T from, T to, SearchStats stats) {
         Set<T> visited = new HashSet<>();
         LinkedList<T> queue = new LinkedList<>();
         Map<T, T> path = new HashMap<>();
@@ -121,9 +308,14 @@ public class ListGraph<T> implements Graph<T>{
         queue.add(from);
 
         while(!queue.isEmpty()) {
+            stats.nodeExpanded(queue.peekFirst(), queue.size());
             T current = queue.pollFirst();
-            for (Edge<T> e : nodes.get(current)){
+            if (current.equals(to))
+                return gatherPath(from, to, path);
+
+            for (Edge<T> e : nodes.get(current).values()){
                 T next = e.getDestination();
+                stats.edgeRelaxed();
                 if (!visited.contains(next)) {
                     queue.add(next);
                     visited.add(next);
@@ -131,20 +323,260 @@ public class ListGraph<T> implements Graph<T>{
                 }
             }
         }
+        return null;
+    }
 
-        if (!visited.contains(to))
-            return null;
-        else
-            return gatherPath(from, to, path);
+    // Dijkstra when the heuristic is zero, A* otherwise. The queue is keyed on
+    // distance plus estimate, the distances themselves are kept by id.
+    private List<Edge<T>> getWeightedPath(T from, T to, Heuristic<T> heuristic, SearchStats stats) {
+        catchNoSuchNode(from);
+        catchNoSuchNode(to);
+
+        Map<T, Integer> ids = new HashMap<>();
+        List<T> byId = new ArrayList<>();
+        double[] distances = new double[16];
+        IndexedMinHeap queue = new IndexedMinHeap();
+        Map<T, T> path = new HashMap<>();
+        ids.put(from, 0);
+        byId.add(from);
+        queue.offer(0, heuristic.estimate(from, to));
+
+        while(!queue.isEmpty()) {
+            int size = queue.size();
+            int settled = queue.poll();
+            T current = byId.get(settled);
+            stats.nodeExpanded(current, distances[settled], size);
+            if (current.equals(to))
+                return gatherPath(from, to, path);
+
+            double distance = distances[settled];
+            for (Edge<T> e : nodes.get(current).values()) {
+                T next = e.getDestination();
+                stats.edgeRelaxed();
+                Integer id = ids.get(next);
+                if (id == null) {
+                    id = byId.size();
+                    ids.put(next, id);
+                    byId.add(next);
+                    if (id == distances.length)
+                        distances = Arrays.copyOf(distances, id * 2);
+                } else if (queue.isRemoved(id)) {
+                    continue;
+                }
+                double tentative = distance + e.getWeight();
+                if (queue.isSeen(id) && tentative >= distances[id])
+                    continue;
+                if (queue.offer(id, tentative + heuristic.estimate(next, to))) {
+                    distances[id] = tentative;
+                    path.put(next, current);
+                }
+            }
+        }
+        return null;
     }
 
-//    private List<Edge<T>> getFastestPath(T from, T to) {
-//        return null;
-//    }
+    // Breadth first from both ends, one whole level at a time from the smaller
+    // frontier. Once a level touches the other side the best meeting found in
+    // that level is on a path with the fewest connections. Every edge is
+    // stored in both directions, so the backward search uses the same maps.
+    private List<Edge<T>> getBidirectionalShortestPath(T from, T to, SearchStats stats) {
+        catchNoSuchNode(from);
+        catchNoSuchNode(to);
+
+        if(from.equals(to))
+            return new ArrayList<>();
+
+        Map<T, Integer> forward = new HashMap<>();
+        Map<T, Integer> backward = new HashMap<>();
+        Map<T, T> forwardPath = new HashMap<>();
+        Map<T, T> backwardPath = new HashMap<>();
+        List<T> forwardFrontier = new ArrayList<>();
+        List<T> backwardFrontier = new ArrayList<>();
+        forward.put(from, 0);
+        backward.put(to, 0);
+        forwardFrontier.add(from);
+        backwardFrontier.add(to);
+
+        T meeting = null;
+        int best = Integer.MAX_VALUE;
+        while(!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+            boolean fromFront = forwardFrontier.size() <= backwardFrontier.size();
+            List<T> frontier = fromFront ? forwardFrontier : backwardFrontier;
+            Map<T, Integer> seen = fromFront ? forward : backward;
+            Map<T, Integer> other = fromFront ? backward : forward;
+            Map<T, T> path = fromFront ? forwardPath : backwardPath;
+
+            List<T> next = new ArrayList<>();
+            for (T current : frontier) {
+                stats.nodeExpanded(current, frontier.size());
+                int depth = seen.get(current) + 1;
+                for (T neighbour : nodes.get(current).keySet()) {
+                    stats.edgeRelaxed();
+                    if(seen.containsKey(neighbour))
+                        continue;
+                    seen.put(neighbour, depth);
+                    path.put(neighbour, current);
+                    next.add(neighbour);
+                    Integer remaining = other.get(neighbour);
+                    if(remaining != null && depth + remaining < best) {
+                        best = depth + remaining;
+                        meeting = neighbour;
+                    }
+                }
+            }
+            if(meeting != null)
+                return joinPaths(from, to, meeting, forwardPath, backwardPath);
+            if(fromFront)
+                forwardFrontier = next;
+            else
+                backwardFrontier = next;
+        }
+        return null;
+    }
+
+    // Dijkstra from both ends, always advancing the side with the lower
+    // queue head. It stops once the two heads add up to at least the best
+    // path seen where the searches touched, which is then the lowest weight.
+    private List<Edge<T>> getBidirectionalWeightedPath(T from, T to, SearchStats stats) {
+        catchNoSuchNode(from);
+        catchNoSuchNode(to);
+
+        if(from.equals(to))
+            return new ArrayList<>();
+
+        Map<T, Integer> ids = new HashMap<>();
+        List<T> byId = new ArrayList<>();
+        double[][] distances = { new double[16], new double[16] };
+        IndexedMinHeap[] queues = { new IndexedMinHeap(), new IndexedMinHeap() };
+        List<Map<T, T>> paths = List.of(new HashMap<>(), new HashMap<>());
+        ids.put(from, 0);
+        byId.add(from);
+        ids.put(to, 1);
+        byId.add(to);
+        queues[0].offer(0, 0);
+        queues[1].offer(1, 0);
+
+        T meeting = null;
+        double best = Double.POSITIVE_INFINITY;
+        while(!queues[0].isEmpty() && !queues[1].isEmpty()) {
+            if(queues[0].peekKey() + queues[1].peekKey() >= best)
+                break;
+            int side = queues[0].peekKey() <= queues[1].peekKey() ? 0 : 1;
+            IndexedMinHeap queue = queues[side];
+            IndexedMinHeap other = queues[1 - side];
+            Map<T, T> path = paths.get(side);
+
+            int size = queue.size() + other.size();
+            int settled = queue.poll();
+            T current = byId.get(settled);
+            double distance = distances[side][settled];
+            stats.nodeExpanded(current, distance, size);
+            for (Edge<T> e : nodes.get(current).values()) {
+                T next = e.getDestination();
+                stats.edgeRelaxed();
+                Integer id = ids.get(next);
+                if (id == null) {
+                    id = byId.size();
+                    ids.put(next, id);
+                    byId.add(next);
+                    if (id == distances[0].length) {
+                        distances[0] = Arrays.copyOf(distances[0], id * 2);
+                        distances[1] = Arrays.copyOf(distances[1], id * 2);
+                    }
+                } else if (queue.isRemoved(id)) {
+                    continue;
+                }
+                double tentative = distance + e.getWeight();
+                if (!queue.isSeen(id) || tentative < distances[side][id]) {
+                    queue.offer(id, tentative);
+                    distances[side][id] = tentative;
+                    path.put(next, current);
+                }
+                if (other.isSeen(id) && tentative + distances[1 - side][id] < best) {
+                    best = tentative + distances[1 - side][id];
+                    meeting = next;
+                }
+            }
+        }
+        return meeting == null ? null : joinPaths(from, to, meeting, paths.get(0), paths.get(1));
+    }
+
+    // The forward search's path up to the meeting node followed by the
+    // backward search's path from there on.
+    private List<Edge<T>> joinPaths(T from, T to, T meeting, Map<T, T> forwardPath, Map<T, T> backwardPath) {
+        List<Edge<T>> result = gatherPath(from, meeting, forwardPath);
+        T current = meeting;
+        while(!current.equals(to)) {
+            T next = backwardPath.get(current);
+            result.add(getEdgeBetween(current, next));
+            current = next;
+        }
+        return result;
+    }
+
+    public void setHeuristic(Heuristic<T> heuristic) {
+        this.heuristic = Objects.requireNonNull(heuristic);
+    }
+
+    // The heuristic A* uses, the one set or else the admissible one.
+    public Heuristic<T> getHeuristic() {
+        if(heuristic != null)
+            return heuristic;
+        if(!scale.isKnown())
+            scale = EuclideanHeuristic.Scale.of(this);
+        return scale.heuristic();
+    }
+
+    // The heuristic that was set, or null, for copies that use the
+    // admissible one.
+    Heuristic<T> chosenHeuristic() {
+        return heuristic;
+    }
+
+    // The admissible scale as it stands, for copies to carry on from.
+    EuclideanHeuristic.Scale scale() {
+        return scale;
+    }
+
+    // Counters from the most recent getPath call.
+    public SearchStats getLastSearchStats() {
+        return lastSearchStats;
+    }
 
     @Override
     public List<Edge<T>> getPath(T from, T to) {
-        return getShortestPath(from, to);
+        return getPath(from, to, PathMode.SHORTEST);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to, PathMode mode) {
+        SearchStats stats = new SearchStats();
+        lastSearchStats = stats;
+        List<Edge<T>> path = search(from, to, mode, stats);
+        stats.finish(mode);
+        return path;
+    }
+
+    private List<Edge<T>> search(T from, T to, PathMode mode, SearchStats stats) {
+        PathIndex<T> index = pathIndexes.get(mode);
+        if(index != null)
+            return index.getPath(from, to);
+
+        switch (mode) {
+            case FASTEST:
+            case CONTRACTION_HIERARCHY:
+            case ALL_PAIRS:
+                return getWeightedPath(from, to, Heuristic.zero(), stats);
+            case A_STAR:
+                return getWeightedPath(from, to, getHeuristic(), stats);
+            case BIDIRECTIONAL_SHORTEST:
+                return getBidirectionalShortestPath(from, to, stats);
+            case BIDIRECTIONAL_FASTEST:
+                return getBidirectionalWeightedPath(from, to, stats);
+            case SHORTEST:
+            default:
+                return getShortestPath(from, to, stats);
+        }
     }
 
     @Override
@@ -0,0 +1,42 @@
+public class LoadStats {
+
+    private final int places;
+    private final int connections;
+    private final long nanos;
+
+    LoadStats(int places, int connections, long nanos) {
+        this.places = places;
+        this.connections = connections;
+        this.nanos = nanos;
+    }
+
+    public int getPlaces() {
+        return places;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public double getPlacesPerSecond() {
+        return perSecond(places);
+    }
+
+    public double getConnectionsPerSecond() {
+        return perSecond(connections);
+    }
+
+    private double perSecond(int count) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d places and %d connections in %.1f ms (%.0f places/s, %.0f connections/s)",
+                places, connections, nanos / 1e6, getPlacesPerSecond(), getConnectionsPerSecond());
+    }
+}
@@ -0,0 +1,336 @@
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+// Draws a map of places on one Canvas instead of a scene node per place,
+// label and connection, for maps too large for the scene graph. The spatial
+// index of the places serves both to find what lies in the viewport and to
+// find the place under the mouse. Drag to pan, scroll to
+// zoom. Zoomed out, labels are left out and connections shorter than a few
+// pixels are not drawn.
+//
+// The canvas and the index follow the graph through its listener, so the
+// graph must only be edited on the JavaFX thread while a canvas shows it.
+// Changes are drawn at the next frame, however many of them there were.
+public class MapCanvas extends Canvas implements GraphListener<Place> {
+
+    // Connections longer than this either way are drawn from a list of their
+    // own, shorter ones from the places around the viewport.
+    private static final double SHORT_EDGE = 64;
+    private static final double RADIUS = 10;
+    private static final double MIN_RADIUS = 1.5;
+    private static final double HIT_PIXELS = 6;
+    private static final double MIN_EDGE_PIXELS = 3;
+    private static final double LABEL_ZOOM = 0.75;
+    private static final int LABEL_LIMIT = 2000;
+    private static final double MIN_ZOOM = 0.02;
+    private static final double MAX_ZOOM = 16;
+
+    private Graph<Place> graph;
+    private SpatialIndex<Place> places;
+    // Connections that are not short, keyed by the end that comes first in
+    // drawing order.
+    private final Map<Place, Set<Place>> longEdges = new HashMap<>();
+    private final Set<Place> selected = new HashSet<>();
+    private final ObjectProperty<Image> background = new SimpleObjectProperty<>(this, "background");
+    private final AnimationTimer timer;
+    private boolean dirty = true;
+
+    private double zoom = 1;
+    private double translateX;
+    private double translateY;
+    private double dragX;
+    private double dragY;
+
+    private Consumer<Place> onPlaceClicked;
+    private Consumer<Point2D> onMapClicked;
+
+    public MapCanvas(Graph<Place> graph, SpatialIndex<Place> places) {
+        this.graph = graph;
+        this.places = places;
+        rebuild();
+        graph.addListener(this);
+
+        widthProperty().addListener((observable, before, after) -> requestRedraw());
+        heightProperty().addListener((observable, before, after) -> requestRedraw());
+        background.addListener((observable, before, after) -> resetView());
+        setOnMousePressed(this::pressed);
+        setOnMouseDragged(this::dragged);
+        setOnMouseClicked(this::clicked);
+        setOnScroll(this::scrolled);
+
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if(dirty) {
+                    dirty = false;
+                    draw();
+                }
+            }
+        };
+        timer.start();
+    }
+
+    // Shows another graph, for example one that was just loaded.
+    public void setGraph(Graph<Place> graph, SpatialIndex<Place> places) {
+        this.graph.removeListener(this);
+        this.graph = graph;
+        this.places = places;
+        selected.clear();
+        rebuild();
+        graph.addListener(this);
+    }
+
+    // Stops following the graph and drawing.
+    public void detach() {
+        graph.removeListener(this);
+        timer.stop();
+    }
+
+    // The map image drawn under the places, in the same coordinates.
+    public ObjectProperty<Image> backgroundProperty() {
+        return background;
+    }
+
+    // Called with the place under the mouse when one is clicked.
+    public void setOnPlaceClicked(Consumer<Place> handler) {
+        onPlaceClicked = handler;
+    }
+
+    // Called with the map coordinates of a click that hit no place.
+    public void setOnMapClicked(Consumer<Point2D> handler) {
+        onMapClicked = handler;
+    }
+
+    public void setSelected(Place place, boolean on) {
+        if(on ? selected.add(place) : selected.remove(place))
+            requestRedraw();
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    // Back to the whole image at its own size.
+    public void resetView() {
+        zoom = 1;
+        translateX = 0;
+        translateY = 0;
+        requestRedraw();
+    }
+
+    public void requestRedraw() {
+        dirty = true;
+    }
+
+    // The place drawn at this point of the canvas, or null.
+    public Place placeAt(double screenX, double screenY) {
+        double x = toMapX(screenX);
+        double y = toMapY(screenY);
+        return places.nearest(x, y, Math.max(radius(), HIT_PIXELS) / zoom);
+    }
+
+    public double toMapX(double screenX) {
+        return (screenX - translateX) / zoom;
+    }
+
+    public double toMapY(double screenY) {
+        return (screenY - translateY) / zoom;
+    }
+
+    private void pressed(MouseEvent event) {
+        dragX = event.getX();
+        dragY = event.getY();
+    }
+
+    private void dragged(MouseEvent event) {
+        translateX += event.getX() - dragX;
+        translateY += event.getY() - dragY;
+        dragX = event.getX();
+        dragY = event.getY();
+        requestRedraw();
+    }
+
+    private void clicked(MouseEvent event) {
+        if(!event.isStillSincePress() || event.getButton() != MouseButton.PRIMARY)
+            return;
+        Place place = placeAt(event.getX(), event.getY());
+        if(place != null && onPlaceClicked != null)
+            onPlaceClicked.accept(place);
+        else if(place == null && onMapClicked != null)
+            onMapClicked.accept(new Point2D(toMapX(event.getX()), toMapY(event.getY())));
+    }
+
+    // Zooms around the mouse, so the point under it stays put.
+    private void scrolled(ScrollEvent event) {
+        double next = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * Math.pow(1.0015, event.getDeltaY())));
+        double x = toMapX(event.getX());
+        double y = toMapY(event.getY());
+        zoom = next;
+        translateX = event.getX() - x * zoom;
+        translateY = event.getY() - y * zoom;
+        requestRedraw();
+        event.consume();
+    }
+
+    private void draw() {
+        GraphicsContext gc = getGraphicsContext2D();
+        double width = getWidth();
+        double height = getHeight();
+        gc.clearRect(0, 0, width, height);
+        Image image = background.get();
+        if(image != null)
+            gc.drawImage(image, translateX, translateY, image.getWidth() * zoom, image.getHeight() * zoom);
+
+        // A short connection that crosses the viewport has both ends at most
+        // this much outside of it.
+        double minX = toMapX(0) - SHORT_EDGE;
+        double maxX = toMapX(width) + SHORT_EDGE;
+        double minY = toMapY(0) - SHORT_EDGE;
+        double maxY = toMapY(height) + SHORT_EDGE;
+        List<Place> visible = places.within(minX, minY, maxX, maxY);
+
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(zoom < LABEL_ZOOM ? 1 : 3);
+        gc.beginPath();
+        double minLength = MIN_EDGE_PIXELS / zoom;
+        for (Place place : visible) {
+            for (Edge<Place> e : graph.getEdgesFrom(place)) {
+                Place other = e.getDestination();
+                boolean otherVisible = other.getX() >= minX && other.getX() <= maxX && other.getY() >= minY && other.getY() <= maxY;
+                // Drawn once, from the end that comes first when both are in
+                // view, and long connections are drawn below.
+                if(otherVisible && !before(place, other) || isLong(place, other))
+                    continue;
+                segment(gc, place, other, minLength);
+            }
+        }
+        for (Map.Entry<Place, Set<Place>> entry : longEdges.entrySet())
+            for (Place other : entry.getValue())
+                segment(gc, entry.getKey(), other, minLength);
+        gc.stroke();
+
+        double radius = radius();
+        gc.setFill(Color.BLUE);
+        for (Place place : visible) {
+            if(!selected.contains(place))
+                gc.fillOval(toScreenX(place) - radius, toScreenY(place) - radius, 2 * radius, 2 * radius);
+        }
+        gc.setFill(Color.RED);
+        for (Place place : selected)
+            gc.fillOval(toScreenX(place) - RADIUS, toScreenY(place) - RADIUS, 2 * RADIUS, 2 * RADIUS);
+
+        if(zoom >= LABEL_ZOOM && visible.size() <= LABEL_LIMIT) {
+            gc.setFill(Color.BLACK);
+            for (Place place : visible) {
+                double x = toScreenX(place);
+                double y = toScreenY(place);
+                if(x >= 0 && x <= width && y >= 0 && y <= height)
+                    gc.fillText(place.getName(), x + 4, y + 18);
+            }
+        }
+    }
+
+    // Adds the connection to the path unless it is too short to see or
+    // misses the viewport.
+    private void segment(GraphicsContext gc, Place from, Place to, double minLength) {
+        double dx = to.getX() - from.getX();
+        double dy = to.getY() - from.getY();
+        if(dx * dx + dy * dy < minLength * minLength)
+            return;
+        double x1 = toScreenX(from);
+        double y1 = toScreenY(from);
+        double x2 = toScreenX(to);
+        double y2 = toScreenY(to);
+        if(Math.max(x1, x2) < 0 || Math.min(x1, x2) > getWidth() || Math.max(y1, y2) < 0 || Math.min(y1, y2) > getHeight())
+            return;
+        gc.moveTo(x1, y1);
+        gc.lineTo(x2, y2);
+    }
+
+    private double radius() {
+        return Math.max(MIN_RADIUS, Math.min(RADIUS, RADIUS * zoom));
+    }
+
+    private double toScreenX(Place place) {
+        return place.getX() * zoom + translateX;
+    }
+
+    private double toScreenY(Place place) {
+        return place.getY() * zoom + translateY;
+    }
+
+    private void rebuild() {
+        longEdges.clear();
+        for (Place place : graph.getNodes()) {
+            for (Edge<Place> e : graph.getEdgesFrom(place))
+                if(before(place, e.getDestination()))
+                    connected(place, e.getDestination(), e.getWeight());
+        }
+        requestRedraw();
+    }
+
+    @Override
+    public void nodeAdded(Place node) {
+        requestRedraw();
+    }
+
+    @Override
+    public void nodeRemoved(Place node) {
+        longEdges.remove(node);
+        selected.remove(node);
+        requestRedraw();
+    }
+
+    @Override
+    public void connected(Place node1, Place node2, int weight) {
+        if(isLong(node1, node2)) {
+            Place first = before(node1, node2) ? node1 : node2;
+            longEdges.computeIfAbsent(first, k -> new HashSet<>()).add(first == node1 ? node2 : node1);
+        }
+        requestRedraw();
+    }
+
+    @Override
+    public void disconnected(Place node1, Place node2, int weight) {
+        Place first = before(node1, node2) ? node1 : node2;
+        Set<Place> others = longEdges.get(first);
+        if(others != null) {
+            others.remove(first == node1 ? node2 : node1);
+            if(others.isEmpty())
+                longEdges.remove(first);
+        }
+        requestRedraw();
+    }
+
+    @Override
+    public void cleared() {
+        longEdges.clear();
+        selected.clear();
+        requestRedraw();
+    }
+
+    private static boolean isLong(Place a, Place b) {
+        return Math.abs(a.getX() - b.getX()) > SHORT_EDGE || Math.abs(a.getY() - b.getY()) > SHORT_EDGE;
+    }
+
+    // Drawing order of the two ends of a connection.
+    private static boolean before(Place a, Place b) {
+        if(a.getX() != b.getX())
+            return a.getX() < b.getX();
+        if(a.getY() != b.getY())
+            return a.getY() < b.getY();
+        return a.getName().compareTo(b.getName()) < 0;
+    }
+}
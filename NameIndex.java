@@ -0,0 +1,279 @@
+import java.util.*;
+
+// Places of a graph by name, in a radix trie: every trie node holds a run of
+// characters rather than a single one, and its children are kept in a sorted
+// array, so a million names take a few million small objects and a lookup
+// costs the length of the name. Exact lookup is case sensitive. Prefix and
+// similar-name lookup ignore case, for typeahead and typos. The index follows
+// the graph's additions and removals through its listener.
+//
+// Like SpatialIndex it is not synchronized: edits and queries must come from
+// one thread, or from any number of threads once the graph stops changing.
+public class NameIndex<T extends Vertex> implements GraphListener<T> {
+
+    private static final char[] NO_KEYS = {};
+    private static final TrieNode[] NO_CHILDREN = {};
+
+    private final Graph<T> graph;
+    private final TrieNode root = new TrieNode("");
+    private int size;
+
+    public NameIndex(Graph<T> graph) {
+        this.graph = graph;
+        for (T node : graph.getNodes())
+            nodeAdded(node);
+        graph.addListener(this);
+    }
+
+    // Stops following the graph, the index keeps its last state.
+    public void detach() {
+        graph.removeListener(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The places with exactly this name, usually one.
+    public List<T> get(String name) {
+        TrieNode node = root;
+        String key = key(name);
+        int i = 0;
+        while(i < key.length()) {
+            int slot = node.slot(key.charAt(i));
+            if(slot < 0)
+                return List.of();
+            node = node.children[slot];
+            if(!key.startsWith(node.label, i))
+                return List.of();
+            i += node.label.length();
+        }
+        List<T> result = new ArrayList<>(1);
+        if(node.places != null)
+            for (Object place : node.places)
+                if(name.equals(((Vertex) place).getName()))
+                    result.add(cast(place));
+        return result;
+    }
+
+    // Up to limit places whose names start with the prefix, in name order.
+    public List<T> withPrefix(String prefix, int limit) {
+        List<T> result = new ArrayList<>();
+        TrieNode node = root;
+        String key = key(prefix);
+        int i = 0;
+        while(i < key.length()) {
+            int slot = node.slot(key.charAt(i));
+            if(slot < 0)
+                return result;
+            node = node.children[slot];
+            int length = Math.min(node.label.length(), key.length() - i);
+            if(!node.label.regionMatches(0, key, i, length))
+                return result;
+            i += node.label.length();
+        }
+        collect(node, limit, result);
+        return result;
+    }
+
+    private void collect(TrieNode node, int limit, List<T> result) {
+        if(node.places != null)
+            for (Object place : node.places)
+                if(result.size() < limit)
+                    result.add(cast(place));
+        for (TrieNode child : node.children) {
+            if(result.size() >= limit)
+                return;
+            collect(child, limit, result);
+        }
+    }
+
+    // Up to limit places whose names are at most maxDistance single
+    // character insertions, deletions or substitutions away from the name,
+    // closest first. The trie is walked with one row of the edit distance
+    // table per character, and a branch is left as soon as every entry of
+    // its row is over the bound.
+    public List<T> similar(String name, int maxDistance, int limit) {
+        String key = key(name);
+        int[] row = new int[key.length() + 1];
+        for (int j = 0; j < row.length; j++)
+            row[j] = j;
+        List<List<T>> byDistance = new ArrayList<>();
+        for (int d = 0; d <= maxDistance; d++)
+            byDistance.add(new ArrayList<>());
+        similar(root, 0, row, key, maxDistance, byDistance);
+
+        List<T> result = new ArrayList<>();
+        for (List<T> places : byDistance)
+            for (T place : places)
+                if(result.size() < limit)
+                    result.add(place);
+        return result;
+    }
+
+    private void similar(TrieNode node, int from, int[] row, String key, int maxDistance, List<List<T>> byDistance) {
+        for (int i = from; i < node.label.length(); i++) {
+            char c = node.label.charAt(i);
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int least = next[0];
+            for (int j = 1; j < row.length; j++) {
+                int substitute = row[j - 1] + (key.charAt(j - 1) == c ? 0 : 1);
+                next[j] = Math.min(substitute, Math.min(row[j], next[j - 1]) + 1);
+                least = Math.min(least, next[j]);
+            }
+            if(least > maxDistance)
+                return;
+            row = next;
+        }
+        int distance = row[row.length - 1];
+        if(node.places != null && distance <= maxDistance)
+            for (Object place : node.places)
+                byDistance.get(distance).add(cast(place));
+        for (TrieNode child : node.children)
+            similar(child, 0, row, key, maxDistance, byDistance);
+    }
+
+    @Override
+    public void nodeAdded(T place) {
+        String key = key(place.getName());
+        TrieNode node = root;
+        int i = 0;
+        while(i < key.length()) {
+            int slot = node.slot(key.charAt(i));
+            if(slot < 0) {
+                node.insert(-slot - 1, new TrieNode(key.substring(i)));
+                node = node.children[-slot - 1];
+                break;
+            }
+            TrieNode child = node.children[slot];
+            int common = 0;
+            while(common < child.label.length() && i + common < key.length() && child.label.charAt(common) == key.charAt(i + common))
+                common++;
+            if(common < child.label.length()) {
+                // The name leaves this run part way, split it there.
+                TrieNode middle = new TrieNode(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.keys = new char[] { child.label.charAt(0) };
+                middle.children = new TrieNode[] { child };
+                node.children[slot] = middle;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        if(node.places == null)
+            node.places = new ArrayList<>(1);
+        node.places.add(place);
+        size++;
+    }
+
+    @Override
+    public void nodeRemoved(T place) {
+        String key = key(place.getName());
+        List<TrieNode> path = new ArrayList<>();
+        TrieNode node = root;
+        int i = 0;
+        while(i < key.length()) {
+            int slot = node.slot(key.charAt(i));
+            if(slot < 0)
+                return;
+            path.add(node);
+            node = node.children[slot];
+            if(!key.startsWith(node.label, i))
+                return;
+            i += node.label.length();
+        }
+        if(node.places == null || !node.places.remove(place))
+            return;
+        size--;
+        if(!node.places.isEmpty())
+            return;
+        node.places = null;
+
+        // Drop the runs that lead nowhere any more, and join a run that is
+        // left with one child and no names of its own to that child.
+        while(node != root && node.places == null) {
+            TrieNode parent = path.remove(path.size() - 1);
+            if(node.children.length > 0) {
+                if(node.children.length == 1)
+                    node.join();
+                return;
+            }
+            parent.delete(parent.slot(node.label.charAt(0)));
+            node = parent;
+        }
+    }
+
+    @Override
+    public void cleared() {
+        root.keys = NO_KEYS;
+        root.children = NO_CHILDREN;
+        root.places = null;
+        size = 0;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object place) {
+        return (T) place;
+    }
+
+    @Override
+    public String toString() {
+        return "NameIndex[" + size + " names]";
+    }
+
+    // A run of characters of one or more names. Children are found by their
+    // first character, which keys holds in sorted order.
+    private static class TrieNode {
+        private String label;
+        private char[] keys = NO_KEYS;
+        private TrieNode[] children = NO_CHILDREN;
+        private List<Object> places;
+
+        TrieNode(String label) {
+            this.label = label;
+        }
+
+        int slot(char c) {
+            return Arrays.binarySearch(keys, c);
+        }
+
+        void insert(int slot, TrieNode child) {
+            char[] nextKeys = new char[keys.length + 1];
+            TrieNode[] nextChildren = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, nextKeys, 0, slot);
+            System.arraycopy(children, 0, nextChildren, 0, slot);
+            nextKeys[slot] = child.label.charAt(0);
+            nextChildren[slot] = child;
+            System.arraycopy(keys, slot, nextKeys, slot + 1, keys.length - slot);
+            System.arraycopy(children, slot, nextChildren, slot + 1, children.length - slot);
+            keys = nextKeys;
+            children = nextChildren;
+        }
+
+        // Takes over the run, names and children of its only child.
+        void join() {
+            TrieNode child = children[0];
+            label = label + child.label;
+            keys = child.keys;
+            children = child.children;
+            places = child.places;
+        }
+
+        void delete(int slot) {
+            char[] nextKeys = new char[keys.length - 1];
+            TrieNode[] nextChildren = new TrieNode[children.length - 1];
+            System.arraycopy(keys, 0, nextKeys, 0, slot);
+            System.arraycopy(children, 0, nextChildren, 0, slot);
+            System.arraycopy(keys, slot + 1, nextKeys, slot, keys.length - slot - 1);
+            System.arraycopy(children, slot + 1, nextChildren, slot, children.length - slot - 1);
+            keys = nextKeys;
+            children = nextChildren;
+        }
+    }
+}
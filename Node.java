@@ -5,34 +5,34 @@ import javafx.scene.shape.Circle;
 public class Node extends Circle {
     private boolean isSelected;
     private final Label label;
-    private final String name;
-    private final double x;
-    private final double y;
-
-    public Node(String name, double x, double y) {
-        super(x, y, 10);
-        this.setId(name);
-        label = new Label(name);
-        label.setLayoutX(x + 4);
-        label.setLayoutY(y + 4);
+    private final Place place;
+
+    public Node(Place place) {
+        super(place.getX(), place.getY(), 10);
+        this.setId(place.getName());
+        label = new Label(place.getName());
+        label.setLayoutX(place.getX() + 4);
+        label.setLayoutY(place.getY() + 4);
         this.setFill(Color.BLUE);
-        this.name = name;
-        this.x = x;
-        this.y = y;
+        this.place = place;
+    }
+
+    public Place getPlace() {
+        return place;
     }
 
     public String getName() {
-        return name;
+        return place.getName();
     }
 
     public Label getLabel() { return label; }
 
     public double getX() {
-        return x;
+        return place.getX();
     }
 
     public double getY() {
-        return y;
+        return place.getY();
     }
 
     public boolean isSelected(){
@@ -50,6 +50,6 @@ public class Node extends Circle {
 
     @Override
     public String toString() {
-        return String.format("%s;%s;%s", name, x, y);
+        return String.format("%s;%s;%s", place.getName(), place.getX(), place.getY());
     }
-}
\ No newline at end of file
+}
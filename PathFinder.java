@@ -1,9 +1,12 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -20,23 +23,53 @@ import javafx.stage.WindowEvent;
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class PathFinder extends Application {
-    private final Graph<Node> graph = new ListGraph<>();
+    private static final int LOAD_BATCH_SIZE = 500;
+    private static final int ROUTE_CACHE_SIZE = 1024;
+    // Maps up to this many places get every route precomputed, larger ones a
+    // contraction hierarchy.
+    private static final int ALL_PAIRS_LIMIT = 5000;
+    private static final int SUGGESTIONS = 10;
+    // Routes offered by Find Path, the one asked for included, and the map
+    // size from which they are found by penalties rather than Yen's method.
+    private static final int ROUTES = 3;
+    private static final int PENALTY_LIMIT = 50_000;
+    private static final String IMAGE = "file:europa.gif";
+    private static final Path SNAPSHOT = Paths.get("europa" + GraphBinaryFormat.EXTENSION);
+    private static final Path CHANGE_LOG = Paths.get("europa" + ChangeLog.EXTENSION);
+
+    private Graph<Place> graph = new CachingGraph<>(new ListGraph<>(), ROUTE_CACHE_SIZE);
+    private ChangeLog changeLog = ChangeLog.create(graph, SNAPSHOT, CHANGE_LOG);
     private boolean unsavedChanges;
-    private Node nodeA;
-    private Node nodeB;
+    private PathMode routeMode = PathMode.FASTEST;
+    private final RouteSnapshot routeSnapshot = new RouteSnapshot();
+    private Place placeA;
+    private Place placeB;
+    // Scene nodes of the places while they are drawn as such, and the canvas
+    // while the map is drawn on one instead.
+    private final Map<Place, Node> views = new HashMap<>();
+    private MapCanvas mapCanvas;
+    private SpatialIndex<Place> placeIndex = new SpatialIndex<>(graph);
+    private NameIndex<Place> nameIndex = new NameIndex<>(graph);
 
     private Stage stage;
     private Pane center;
     private Button newPlaceButton;
+    private CheckMenuItem canvasItem;
     private final ImageView imageView = new ImageView();
     private final NodeSelectorHandler selector = new NodeSelectorHandler();
+    private final SnapHandler snapper = new SnapHandler();
 
     @Override
     public void start(Stage stage) {
         this.stage = stage;
+        GraphMetrics.register();
+        graph.addListener(routeSnapshot);
         BorderPane root = new BorderPane();
         root.setStyle("-fx-font-size: 14");
 
@@ -60,6 +93,11 @@ public class PathFinder extends Application {
         saveItem.setOnAction(new SaveItemHandler());
         saveImageItem.setOnAction(new SaveImageItemHandler());
         exitItem.setOnAction(new ExitItemHandler());
+        Menu viewMenu = new Menu("View");
+        menuBar.getMenus().add(viewMenu);
+        canvasItem = new CheckMenuItem("Draw on Canvas");
+        viewMenu.getItems().add(canvasItem);
+        canvasItem.setOnAction(e -> setCanvasMode(canvasItem.isSelected()));
 
         // buttonsMenu area
         HBox buttonsMenu = new HBox();
@@ -73,7 +111,15 @@ public class PathFinder extends Application {
         newConnectionButton.setOnAction(new NewConnectionHandler());
         Button changeConnectionButton = new Button("Change Connection");
         changeConnectionButton.setOnAction(new ChangeConnectionHandler());
-        buttonsMenu.getChildren().addAll(findPathButton, showConnectionsButton, newPlaceButton, newConnectionButton, changeConnectionButton);
+        TextField placeField = new TextField();
+        placeField.setPromptText("Find place");
+        ContextMenu suggestions = new ContextMenu();
+        placeField.textProperty().addListener((observable, before, text) -> suggest(placeField, suggestions, text));
+        placeField.setOnAction(e -> {
+            selectByName(placeField.getText().trim());
+            placeField.clear();
+        });
+        buttonsMenu.getChildren().addAll(findPathButton, showConnectionsButton, newPlaceButton, newConnectionButton, changeConnectionButton, placeField);
         buttonsMenu.setAlignment(Pos.CENTER);
         buttonsMenu.setPadding(new Insets(10));
         buttonsMenu.setSpacing(5);
@@ -83,6 +129,7 @@ public class PathFinder extends Application {
         center = new Pane();
         root.setCenter(center);
         center.getChildren().add(imageView);
+        imageView.setOnMouseClicked(snapper);
 
         Scene scene = new Scene(root);
         stage.sizeToScene();
@@ -100,11 +147,14 @@ public class PathFinder extends Application {
         saveItem.setId("menuSaveFile");
         saveImageItem.setId("menuSaveImage");
         exitItem.setId("menuExit");
+        viewMenu.setId("menuView");
+        canvasItem.setId("menuCanvas");
         findPathButton.setId("btnFindPath");
         showConnectionsButton.setId("btnShowConnection");
         newPlaceButton.setId("btnNewPlace");
         newConnectionButton.setId("btnNewConnection");
         changeConnectionButton.setId("btnChangeConnection");
+        placeField.setId("txtFindPlace");
     }
 
     class NewMapHandler implements EventHandler<ActionEvent> {
@@ -126,104 +176,218 @@ public class PathFinder extends Application {
             if(unsavedChanges)
                 return;
 
-            Map<String, Node> imports = new HashMap<>();
-            BufferedReader reader = null;
+            // Parse and build the graph on a background thread, the scene is
+            // filled in batches as places and connections come in. A saved
+            // snapshot and its change log are preferred over the text file.
+            ListGraph<Place> loaded = new ListGraph<>();
+            NameIndex<Place> names = new NameIndex<>(loaded);
+            boolean fromSnapshot = Files.exists(SNAPSHOT);
+            boolean drawNodes = mapCanvas == null;
+            Task<LoadStats> task = new Task<>() {
+                @Override
+                protected LoadStats call() throws IOException {
+                    SceneLoader sink = new SceneLoader(loaded, drawNodes);
+                    LoadStats stats;
+                    if(fromSnapshot) {
+                        long start = System.nanoTime();
+                        ListGraph<Place> restored = new ListGraph<>();
+                        String image = ChangeLog.replay(SNAPSHOT, CHANGE_LOG, restored);
+                        GraphSink.export(image, restored, sink);
+                        stats = new LoadStats(sink.places, sink.connections, System.nanoTime() - start);
+                    } else {
+                        try (Reader reader = new FileReader("europa.graph")) {
+                            stats = new GraphTextReader(reader).read(sink);
+                        }
+                    }
+                    sink.commit();
+                    return stats;
+                }
+            };
+            task.setOnSucceeded(e -> {
+                graph = new CachingGraph<>(loaded, ROUTE_CACHE_SIZE);
+                graph.addListener(routeSnapshot);
+                routeSnapshot.drop();
+                placeIndex.detach();
+                placeIndex = new SpatialIndex<>(graph);
+                nameIndex.detach();
+                nameIndex = names;
+                if(mapCanvas != null)
+                    mapCanvas.setGraph(graph, placeIndex);
+                startChangeLog(fromSnapshot);
+                unsavedChanges = false;
+                center.setDisable(false);
+                canvasItem.setDisable(false);
+                prepareIndex(loaded);
+            });
+            task.setOnFailed(e -> {
+                center.setDisable(false);
+                canvasItem.setDisable(false);
+                task.getException().printStackTrace();
+            });
+
+            center.setDisable(true);
+            canvasItem.setDisable(true);
+            Thread loader = new Thread(task, "graph-loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
 
-            try {
-                FileReader dataFile = new FileReader("europa.graph");
-                reader = new BufferedReader(dataFile);
+    // Small maps get an all-pairs table. Larger ones read the contraction
+    // hierarchy saved next to the map, or build and save a new one when it is
+    // missing or was built for another graph. The index is only attached if
+    // the graph has not been edited in the meantime, and edits drop it again.
+    // The index is built from a frozen copy taken here on the JavaFX thread,
+    // since the graph itself may be edited while the builder reads.
+    private void prepareIndex(ListGraph<Place> loaded) {
+        int modifications = loaded.getModificationCount();
+        CsrGraph<Place> snapshot = new CsrGraph<>(loaded);
+        boolean allPairs = loaded.getNodes().size() <= ALL_PAIRS_LIMIT;
+        PathMode mode = allPairs ? PathMode.ALL_PAIRS : PathMode.CONTRACTION_HIERARCHY;
+        routeMode = mode;
+        Task<PathIndex<Place>> task = new Task<>() {
+            @Override
+            protected PathIndex<Place> call() throws IOException {
+                if(allPairs)
+                    return AllPairsTable.build(snapshot);
+                try (InputStream in = new BufferedInputStream(new FileInputStream("europa.ch"))) {
+                    return ContractionHierarchy.read(in, snapshot);
+                } catch (IOException e) {
+                    ContractionHierarchy<Place> ch = ContractionHierarchy.build(snapshot);
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream("europa.ch"))) {
+                        ch.write(out);
+                    }
+                    return ch;
+                }
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if(loaded.getModificationCount() == modifications)
+                loaded.setPathIndex(mode, task.getValue());
+        });
+        task.setOnFailed(e -> task.getException().printStackTrace());
+
+        Thread builder = new Thread(task, "index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    // Records the edits to the current graph from now on. A graph that was
+    // restored from the snapshot continues its log, any other graph gets a
+    // snapshot of its own on the first save.
+    private void startChangeLog(boolean restored) {
+        try {
+            changeLog.close();
+            if(restored) {
+                changeLog = ChangeLog.open(graph, SNAPSHOT, CHANGE_LOG);
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        changeLog = ChangeLog.create(graph, SNAPSHOT, CHANGE_LOG);
+    }
 
-                // Add image from filename on line 1.
-                imageView.setImage(new Image(reader.readLine()));
+    // Scene nodes are only made when the map is not drawn on a canvas, which
+    // draws the graph itself once it is loaded. Places are shown as they come
+    // in, the graph gets the whole file in one batch at the end and the
+    // connections are shown after that.
+    class SceneLoader implements GraphSink {
+        private final Graph<Place> target;
+        private final boolean drawNodes;
+        private final Map<String, Place> imported = new HashMap<>();
+        private final GraphBuilder<Place> pending = new GraphBuilder<>();
+        private List<javafx.scene.Node> batch = new ArrayList<>();
+        private int places;
+        private int connections;
+
+        SceneLoader(Graph<Place> target, boolean drawNodes) {
+            this.target = target;
+            this.drawNodes = drawNodes;
+        }
+
+        @Override
+        public void image(String location) {
+            Platform.runLater(() -> {
+                imageView.setImage(new Image(location));
                 stage.sizeToScene();
+            });
+        }
 
-                // Add all locations on line 2.
-                LinkedList<String> queue = new LinkedList<>(Arrays.asList(reader.readLine().trim().split(";")));
-                while(!queue.isEmpty()) {
-                    String name = queue.remove();
-                    double x = Double.parseDouble(queue.remove());
-                    double y = Double.parseDouble(queue.remove());
-
-                    if(!imports.containsKey(name)) {
-                        Node node = new Node(name, x, y);
-                        graph.add(node);
-                        center.getChildren().add(node);
-                        center.getChildren().add(node.getLabel());
-                        node.setOnMouseClicked(selector);
-                        imports.put(name, node);
-                    }
-                }
+        @Override
+        public void place(String name, double x, double y) {
+            if(imported.containsKey(name))
+                return;
 
-                // Add connections between nodes from line 3 and onwards.
-                String nextLine = reader.readLine().trim();
-                do {
-                    String[] current = nextLine.split(";");
-                    Node from = imports.get(current[0]);
-                    Node to = imports.get(current[1]);
-                    String name = current[2];
-                    int weight = Integer.parseInt(current[3]);
-                    try {
-                        graph.connect(from, to, name, weight);
-                        Line line = new Line(from.getX(), from.getY(), to.getX(), to.getY());
-                        line.setMouseTransparent(true);
-                        line.setStrokeWidth(3);
-                        line.setFill(Color.BLACK);
-                        center.getChildren().add(line);
-                    } catch (IllegalStateException e) {
-                        // graph.connect() will return IllegalStateException if connection already exist.
-                    }
-                    nextLine = reader.readLine();
-                } while (nextLine != null && !nextLine.equals(""));
-                unsavedChanges = false;
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                try {
-                    if (reader != null) {
-                        reader.close();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
+            Place place = new Place(name, x, y);
+            imported.put(name, place);
+            pending.add(place);
+            places++;
+            if(drawNodes) {
+                Node node = new Node(place);
+                node.setOnMouseClicked(selector);
+                publish(node);
+                publish(node.getLabel());
+            }
+        }
+
+        @Override
+        public void connection(String fromName, String toName, String name, int weight) {
+            Place from = imported.get(fromName);
+            Place to = imported.get(toName);
+            if(from == null || to == null)
+                return;
+
+            // The file lists every connection from both ends, the batch keeps
+            // the first.
+            pending.connect(from, to, name, weight);
+            connections++;
+        }
+
+        void commit() {
+            target.addAll(pending);
+            if(drawNodes) {
+                Set<Place> done = new HashSet<>();
+                for (Place place : target.getNodes()) {
+                    for (Edge<Place> e : target.getEdgesFrom(place))
+                        if(!done.contains(e.getDestination()))
+                            publish(createLine(place, e.getDestination()));
+                    done.add(place);
                 }
             }
+            flush();
+        }
+
+        private void publish(javafx.scene.Node sceneNode) {
+            batch.add(sceneNode);
+            if(batch.size() >= LOAD_BATCH_SIZE)
+                flush();
+        }
+
+        void flush() {
+            if(batch.isEmpty())
+                return;
+            List<javafx.scene.Node> ready = batch;
+            batch = new ArrayList<>();
+            Platform.runLater(() -> {
+                for (javafx.scene.Node sceneNode : ready)
+                    if(sceneNode instanceof Node)
+                        views.put(((Node) sceneNode).getPlace(), (Node) sceneNode);
+                center.getChildren().addAll(ready);
+            });
         }
     }
 
     class SaveItemHandler implements EventHandler<ActionEvent> {
         @Override
         public void handle(ActionEvent actionEvent) {
-            PrintWriter pw = null;
+            // Appends the edits since the last save to the change log, which
+            // now and then writes a full snapshot instead.
             try {
-                FileWriter fw = new FileWriter("europa.graph");
-                pw = new PrintWriter(fw);
-
-                pw.println("file:europa.gif");
-                StringBuilder nodeStr = new StringBuilder();
-                StringBuilder edgeStr = new StringBuilder();
-                for (Node node : graph.getNodes()) {
-                    if(nodeStr.length() != 0)
-                        nodeStr.append(";");
-                    nodeStr.append(node);
-
-                    Collection<Edge<Node>> connections = graph.getEdgesFrom(node);
-                    for (Edge<Node> dest : connections) {
-                        edgeStr.append("\n");
-                        edgeStr.append(node.getName()).append(";");
-                        edgeStr.append(dest.getDestination().getName()).append(";");
-                        edgeStr.append(dest.getName()).append(";");
-                        edgeStr.append(dest.getWeight());
-                    }
-                }
-
-                pw.print(nodeStr.toString());
-                pw.print(edgeStr.toString());
+                changeLog.save(IMAGE);
                 unsavedChanges = false;
             } catch (IOException e) {
                 e.printStackTrace();
-            } finally {
-                if (pw != null) {
-                    pw.close();
-                }
             }
         }
     }
@@ -253,37 +417,123 @@ public class PathFinder extends Application {
     class FindPathHandler implements EventHandler<ActionEvent> {
         @Override
         public void handle(ActionEvent actionEvent) {
-            if(nodeA == null || nodeB == null) {
+            if(placeA == null || placeB == null) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Warning!", "Two places must be selected!").showAndWait();
                 return;
             }
-            List<Edge<Node>> path = graph.getPath(nodeA, nodeB);
-            if(path == null)
+            List<Edge<Place>> path = graph.getPath(placeA, placeB, routeMode);
+            if(path == null) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Warning!", "Two places must be selected!").showAndWait();
-            else
-                new CustomAlert.FindPath(nodeA, nodeB, path);
+                return;
+            }
+
+            // The route asked for is shown at once. Alternatives are searched
+            // for on a background thread in the frozen copy of the graph, and
+            // added to the dialog as long as it is open.
+            Place from = placeA;
+            Place to = placeB;
+            CsrGraph<Place> snapshot = routeSnapshot.get();
+            KShortestPaths.Method method = snapshot.size() < PENALTY_LIMIT ? KShortestPaths.Method.YEN : KShortestPaths.Method.PENALTY;
+            CustomAlert.FindPath alert = new CustomAlert.FindPath(from, to, path);
+            Task<KShortestPaths<Place>> task = new Task<>() {
+                @Override
+                protected KShortestPaths<Place> call() {
+                    return KShortestPaths.find(snapshot, from, to, ROUTES, method);
+                }
+            };
+            task.setOnSucceeded(e -> {
+                for (List<Edge<Place>> alternative : task.getValue().getPaths())
+                    if(alert.getAlternatives() < ROUTES - 1 && !sameRoute(alternative, path))
+                        alert.addAlternative(alternative);
+            });
+            task.setOnFailed(e -> task.getException().printStackTrace());
+
+            Thread finder = new Thread(task, "alternative-routes");
+            finder.setDaemon(true);
+            finder.start();
+            alert.showAndWait();
+            task.cancel();
+        }
+
+        private boolean sameRoute(List<Edge<Place>> a, List<Edge<Place>> b) {
+            if(a.size() != b.size())
+                return false;
+            for (int i = 0; i < a.size(); i++)
+                if(!a.get(i).getDestination().equals(b.get(i).getDestination()))
+                    return false;
+            return true;
+        }
+    }
+
+    // Frozen copy of the graph for the alternative routes. It is taken on the
+    // JavaFX thread when first asked for and kept until the graph is edited
+    // or replaced, so repeated searches do not copy the whole graph each time.
+    class RouteSnapshot implements GraphListener<Place> {
+        private CsrGraph<Place> snapshot;
+
+        CsrGraph<Place> get() {
+            if(snapshot == null)
+                snapshot = new CsrGraph<>(graph);
+            return snapshot;
+        }
+
+        void drop() {
+            snapshot = null;
+        }
+
+        @Override
+        public void nodeAdded(Place node) {
+            drop();
+        }
+
+        @Override
+        public void nodeRemoved(Place node) {
+            drop();
+        }
+
+        @Override
+        public void connected(Place node1, Place node2, int weight) {
+            drop();
+        }
+
+        @Override
+        public void disconnected(Place node1, Place node2, int weight) {
+            drop();
+        }
+
+        @Override
+        public void weightChanged(Place node1, Place node2, int oldWeight, int newWeight) {
+            drop();
+        }
+
+        @Override
+        public void cleared() {
+            drop();
         }
     }
 
     class ShowConnectionsHandler implements EventHandler<ActionEvent> {
         @Override
         public void handle(ActionEvent actionEvent) {
-            if(nodeA == null || nodeB == null) {
+            if(placeA == null || placeB == null) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Warning!", "Two places must be selected!").showAndWait();
                 return;
             }
-            Edge<Node> edge = graph.getEdgeBetween(nodeA, nodeB);
+            Edge<Place> edge = graph.getEdgeBetween(placeA, placeB);
             if(edge == null)
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "These two places are not connected!").showAndWait();
             else
-                new CustomAlert.Connection.Show(nodeA.getName(), nodeB.getName(), edge.getName(), edge.getWeight()).showAndWait();
+                new CustomAlert.Connection.Show(placeA.getName(), placeB.getName(), edge.getName(), edge.getWeight()).showAndWait();
         }
     }
 
     class NewPlaceHandler implements EventHandler<ActionEvent> {
         @Override
         public void handle(ActionEvent actionEvent) {
-            imageView.setOnMouseClicked(new NewNodeHandler());
+            if(mapCanvas != null)
+                mapCanvas.setOnMapClicked(point -> newPlace(point.getX(), point.getY()));
+            else
+                imageView.setOnMouseClicked(new NewNodeHandler());
             newPlaceButton.setDisable(true);
             center.setCursor(Cursor.CROSSHAIR);
         }
@@ -292,23 +542,20 @@ public class PathFinder extends Application {
     class NewConnectionHandler implements EventHandler<ActionEvent> {
         @Override
         public void handle(ActionEvent actionEvent) {
-            if(nodeA == null || nodeB == null) {
+            if(placeA == null || placeB == null) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Warning!", "Two places must be selected!").showAndWait();
                 return;
-            } else if (graph.getEdgeBetween(nodeA, nodeB) != null) {
+            } else if (graph.getEdgeBetween(placeA, placeB) != null) {
                 new CustomAlert.General(Alert.AlertType.ERROR, "Error!", "Connection already exists!").showAndWait();
                 return;
             }
             try {
-                CustomAlert.Connection.New dialog = new CustomAlert.Connection.New(nodeA.getName(), nodeB.getName());
+                CustomAlert.Connection.New dialog = new CustomAlert.Connection.New(placeA.getName(), placeB.getName());
                 dialog.showAndWait();
                 try {
-                    graph.connect(nodeA, nodeB, dialog.getName(), dialog.getWeight());
-                    Line line = new Line(nodeA.getX(), nodeA.getY(), nodeB.getX(), nodeB.getY());
-                    line.setMouseTransparent(true);
-                    line.setStrokeWidth(3);
-                    line.setFill(Color.BLACK);
-                    center.getChildren().add(line);
+                    graph.connect(placeA, placeB, dialog.getName(), dialog.getWeight());
+                    if(mapCanvas == null)
+                        center.getChildren().add(createLine(placeA, placeB));
                     unsavedChanges = true;
                 } catch (IllegalArgumentException e) {
                     new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Time must be a numerical value of zero or more.").showAndWait();
@@ -322,21 +569,21 @@ public class PathFinder extends Application {
     class ChangeConnectionHandler implements EventHandler<ActionEvent> {
         @Override
         public void handle(ActionEvent actionEvent) {
-            if(nodeA == null || nodeB == null) {
+            if(placeA == null || placeB == null) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Warning!", "Two places must be selected!").showAndWait();
                 return;
             }
 
-            Edge<Node> edge = graph.getEdgeBetween(nodeA, nodeB);
+            Edge<Place> edge = graph.getEdgeBetween(placeA, placeB);
             if(edge == null) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "These two places are not connected!").showAndWait();
                 return;
             }
 
             try {
-                CustomAlert.Connection.Change dialog = new CustomAlert.Connection.Change(nodeA.getName(), nodeB.getName(), edge.getName(), edge.getWeight());
+                CustomAlert.Connection.Change dialog = new CustomAlert.Connection.Change(placeA.getName(), placeB.getName(), edge.getName(), edge.getWeight());
                 dialog.showAndWait();
-                graph.setConnectionWeight(nodeA, nodeB, dialog.getNewWeight());
+                graph.setConnectionWeight(placeA, placeB, dialog.getNewWeight());
             } catch (NumberFormatException e) {
                 new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Time must be a numerical value of zero or more.").showAndWait();
                 return;
@@ -349,55 +596,184 @@ public class PathFinder extends Application {
     class NewNodeHandler implements EventHandler<MouseEvent> {
         @Override
         public void handle(MouseEvent event) {
-            String name;
-            double x = event.getX();
-            double y = event.getY();
-
-            CustomAlert.NewNode dialog = new CustomAlert.NewNode();
-            dialog.showAndWait();
-            name = dialog.getName();
+            newPlace(event.getX(), event.getY());
+        }
+    }
 
-            if(name.isEmpty()) {
-                new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Name cannot be empty!").showAndWait();
-                return;
-            }
+    private void newPlace(double x, double y) {
+        String name;
 
-            Node node = new Node(name, x, y);
-            graph.add(node);
+        CustomAlert.NewNode dialog = new CustomAlert.NewNode();
+        dialog.showAndWait();
+        name = dialog.getName();
 
-            node.setOnMouseClicked(selector);
-            center.getChildren().add(node);
-            center.getChildren().add(node.getLabel());
-            unsavedChanges = true;
+        if(name.isEmpty()) {
+            new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "Name cannot be empty!").showAndWait();
+            return;
+        }
 
-            // Restore previous state
-            center.setCursor(Cursor.DEFAULT);
-            newPlaceButton.setDisable(false);
-            imageView.setOnMouseClicked(null);
+        Place place = new Place(name, x, y);
+        graph.add(place);
+        if(mapCanvas == null) {
+            Node node = createNode(place);
+            center.getChildren().addAll(node, node.getLabel());
         }
+        unsavedChanges = true;
+        endNewPlace();
+    }
+
+    // Restore previous state
+    private void endNewPlace() {
+        center.setCursor(Cursor.DEFAULT);
+        newPlaceButton.setDisable(false);
+        imageView.setOnMouseClicked(snapper);
+        if(mapCanvas != null)
+            mapCanvas.setOnMapClicked(point -> snapTo(point.getX(), point.getY()));
     }
 
     class NodeSelectorHandler implements EventHandler<MouseEvent> {
         @Override
         public void handle(MouseEvent event) {
-            Node node = (Node)event.getSource();
-            if(nodeA == null && nodeB != node) {
-                nodeA = node;
-                node.setSelected(true);
-            } else if (nodeB == null && node != nodeA) {
-                nodeB = node;
-                node.setSelected(true);
-            } else {
-                assert node != null;
-                node.setSelected(false);
-                if (nodeA == node) {
-                    nodeA = nodeB;
-                    nodeB = null;
-                }
-                if (nodeB == node)
-                    nodeB = null;
+            toggleSelection(((Node) event.getSource()).getPlace());
+        }
+    }
+
+    // A click on the map that misses every place selects the one nearest
+    // to it.
+    class SnapHandler implements EventHandler<MouseEvent> {
+        @Override
+        public void handle(MouseEvent event) {
+            snapTo(event.getX(), event.getY());
+        }
+    }
+
+    private void snapTo(double x, double y) {
+        Place place = placeIndex.nearest(x, y);
+        if(place != null)
+            toggleSelection(place);
+    }
+
+    // Offers the places whose names start with what has been typed so far.
+    private void suggest(TextField field, ContextMenu suggestions, String text) {
+        suggestions.getItems().clear();
+        if(!text.isBlank()) {
+            for (Place place : nameIndex.withPrefix(text.trim(), SUGGESTIONS)) {
+                MenuItem item = new MenuItem(place.getName());
+                item.setOnAction(e -> {
+                    field.clear();
+                    select(place);
+                });
+                suggestions.getItems().add(item);
+            }
+        }
+        if(suggestions.getItems().isEmpty())
+            suggestions.hide();
+        else if(!suggestions.isShowing())
+            suggestions.show(field, Side.BOTTOM, 0, 0);
+    }
+
+    // Selects the place with this name, or with the closest name there is,
+    // so that routes can be found by name.
+    private void selectByName(String name) {
+        if(name.isEmpty())
+            return;
+        List<Place> found = nameIndex.get(name);
+        if(found.isEmpty())
+            found = nameIndex.similar(name, 2, 1);
+        if(found.isEmpty())
+            new CustomAlert.GeneralNoHeader(Alert.AlertType.ERROR, "There is no place called " + name + "!").showAndWait();
+        else
+            select(found.get(0));
+    }
+
+    private void select(Place place) {
+        if(place != placeA && place != placeB)
+            toggleSelection(place);
+    }
+
+    private void toggleSelection(Place place) {
+        if(placeA == null && placeB != place) {
+            placeA = place;
+            showSelected(place, true);
+        } else if (placeB == null && place != placeA) {
+            placeB = place;
+            showSelected(place, true);
+        } else {
+            showSelected(place, false);
+            if (placeA == place) {
+                placeA = placeB;
+                placeB = null;
             }
+            if (placeB == place)
+                placeB = null;
+        }
+    }
+
+    private void showSelected(Place place, boolean selected) {
+        if(mapCanvas != null)
+            mapCanvas.setSelected(place, selected);
+        else if(views.containsKey(place))
+            views.get(place).setSelected(selected);
+    }
+
+    // Switches between a scene node per place, label and connection, and
+    // drawing the whole map on one canvas, which large maps need.
+    private void setCanvasMode(boolean on) {
+        if(on == (mapCanvas != null))
+            return;
+        endNewPlace();
+        center.getChildren().removeIf(e -> !(e instanceof ImageView));
+        views.clear();
+        if(on) {
+            mapCanvas = new MapCanvas(graph, placeIndex);
+            mapCanvas.backgroundProperty().bind(imageView.imageProperty());
+            mapCanvas.widthProperty().bind(center.widthProperty());
+            mapCanvas.heightProperty().bind(center.heightProperty());
+            mapCanvas.setOnPlaceClicked(this::toggleSelection);
+            mapCanvas.setOnMapClicked(point -> snapTo(point.getX(), point.getY()));
+            imageView.setVisible(false);
+            center.getChildren().add(mapCanvas);
+        } else {
+            mapCanvas.detach();
+            mapCanvas = null;
+            imageView.setVisible(true);
+            showSceneNodes();
         }
+        for (Place place : new Place[] { placeA, placeB })
+            if(place != null)
+                showSelected(place, true);
+    }
+
+    private void showSceneNodes() {
+        List<javafx.scene.Node> lines = new ArrayList<>();
+        List<javafx.scene.Node> nodes = new ArrayList<>();
+        Set<Place> added = new HashSet<>();
+        for (Place place : graph.getNodes()) {
+            for (Edge<Place> e : graph.getEdgesFrom(place))
+                if(added.contains(e.getDestination()))
+                    lines.add(createLine(place, e.getDestination()));
+            added.add(place);
+            Node node = createNode(place);
+            nodes.add(node);
+            nodes.add(node.getLabel());
+        }
+        center.getChildren().addAll(lines);
+        center.getChildren().addAll(nodes);
+    }
+
+    private Node createNode(Place place) {
+        Node node = new Node(place);
+        node.setOnMouseClicked(selector);
+        views.put(place, node);
+        return node;
+    }
+
+    private Line createLine(Place from, Place to) {
+        Line line = new Line(from.getX(), from.getY(), to.getX(), to.getY());
+        line.setMouseTransparent(true);
+        line.setStrokeWidth(3);
+        line.setFill(Color.BLACK);
+        return line;
     }
 
     private void discardUnsavedChanges() {
@@ -407,10 +783,11 @@ public class PathFinder extends Application {
         if(!discard)
             return;
 
-        center.getChildren().removeIf(e->!(e instanceof ImageView));
+        center.getChildren().removeIf(e -> !(e instanceof ImageView || e == mapCanvas));
+        views.clear();
         graph.removeAll();
-        nodeA = null;
-        nodeB = null;
+        placeA = null;
+        placeB = null;
         unsavedChanges = false;
     }
     
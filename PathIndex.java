@@ -0,0 +1,9 @@
+import java.util.List;
+
+// Precomputed structure that answers path queries for one PathMode. An
+// index describes the graph as it was when it was built.
+public interface PathIndex<T> {
+
+    List<Edge<T>> getPath(T from, T to);
+
+}
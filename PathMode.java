@@ -0,0 +1,26 @@
+public enum PathMode {
+
+    // Fewest connections, ignores the weights.
+    SHORTEST,
+
+    // Lowest total weight (travel time).
+    FASTEST,
+
+    // Lowest total weight, guided towards the target by the graph's heuristic.
+    A_STAR,
+
+    // Lowest total weight, answered by the graph's ContractionHierarchy when
+    // one is attached and the same as FASTEST otherwise.
+    CONTRACTION_HIERARCHY,
+
+    // Same result as SHORTEST, searching from both ends until they meet.
+    BIDIRECTIONAL_SHORTEST,
+
+    // Same result as FASTEST, searching from both ends until they meet.
+    BIDIRECTIONAL_FASTEST,
+
+    // Lowest total weight, looked up in the graph's AllPairsTable when one
+    // is attached and the same as FASTEST otherwise.
+    ALL_PAIRS
+
+}
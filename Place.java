@@ -0,0 +1,34 @@
+// A named point on the map. This is what the graph is built from; the
+// JavaFX view of a place is a Node.
+public class Place implements Vertex {
+
+    private final String name;
+    private final double x;
+    private final double y;
+
+    public Place(String name, double x, double y) {
+        this.name = name;
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,449 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Headless routing service, runs without JavaFX:
+//   javac -d out -sourcepath . RoutingServer.java
+//   java -cp out RoutingServer europa.graph [-port 8080]
+// Answers on the loopback address only, every reply is JSON:
+//   GET  /route?from=A&to=B[&mode=FASTEST]   path and total weight
+//   GET  /exists?from=A&to=B
+//   GET  /edge?from=A&to=B                   the direct connection
+//   GET  /nearest?x=X&y=Y                    the place closest to a point
+//   GET  /complete?prefix=P[&limit=10]       names starting with P
+//   GET  /similar?name=N[&distance=2&limit=10]
+//                  names at most that many typos away from N, closest first
+//   POST /batch    one query per line, fields separated by ';' as in the
+//                  graph file, in the order of the parameters above:
+//                  route;A;B[;MODE], nearest;X;Y, complete;P and so on
+// An unknown place name is answered with 404 and the closest name there is.
+//   GET  /stats    request counts and p50/p99 latency per endpoint
+// The graph is loaded once and frozen into a CsrGraph, which any number of
+// requests can search at the same time. Each request runs on a virtual
+// thread where the JDK has them (21 and later), on a pooled thread before.
+public class RoutingServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int LATENCY_SAMPLES = 8192;
+    // Most routes one alternatives query may ask for.
+    private static final int MAX_ROUTES = 10;
+
+    private final Graph<Place> graph;
+    private final NameIndex<Place> names;
+    private final SpatialIndex<Place> index;
+    private final Map<String, Function<Map<String, String>, String>> queries = new LinkedHashMap<>();
+    // Parameters of each query in the order batch lines give them.
+    private final Map<String, List<String>> parameterNames = new HashMap<>();
+    private final Map<String, LatencyRecorder> latencies = new LinkedHashMap<>();
+    private final long started = System.nanoTime();
+    private HttpServer server;
+
+    public RoutingServer(Graph<Place> graph) {
+        this.graph = graph;
+        names = new NameIndex<>(graph);
+        index = new SpatialIndex<>(graph);
+        query("route", this::route, "from", "to", "mode");
+        query("alternatives", this::alternatives, "from", "to", "k", "method");
+        query("exists", this::exists, "from", "to");
+        query("edge", this::edge, "from", "to");
+        query("nearest", this::nearest, "x", "y");
+        query("complete", this::complete, "prefix", "limit");
+        query("similar", this::similar, "name", "distance", "limit");
+        for (String name : List.of("batch", "stats"))
+            latencies.put(name, new LatencyRecorder());
+    }
+
+    private void query(String name, Function<Map<String, String>, String> query, String... parameters) {
+        queries.put(name, query);
+        parameterNames.put(name, List.of(parameters));
+        latencies.put(name, new LatencyRecorder());
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = null;
+        int port = DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    file = Paths.get(args[i]);
+            }
+        }
+        if(file == null)
+            throw new IllegalArgumentException("Usage: RoutingServer <file.graph|file" + GraphBinaryFormat.EXTENSION + "> [-port N]");
+
+        GraphMetrics.register();
+        long start = System.nanoTime();
+        Graph<Place> graph = load(file);
+        RoutingServer routingServer = new RoutingServer(graph);
+        routingServer.start(port);
+        System.out.printf("Loaded %d places in %.0f ms, serving on http://%s:%d/%n", graph.getNodes().size(),
+                (System.nanoTime() - start) / 1e6, InetAddress.getLoopbackAddress().getHostAddress(), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(routingServer::stop));
+    }
+
+    // Reads a text or binary graph file into a frozen graph.
+    public static Graph<Place> load(Path file) throws IOException {
+        ListGraph<Place> loaded = new ListGraph<>();
+        Loader loader = new Loader();
+        if(file.toString().endsWith(GraphBinaryFormat.EXTENSION)) {
+            GraphBinaryFormat.read(file, loader);
+        } else {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                new GraphTextReader(in).read(loader);
+            }
+        }
+        loaded.addAll(loader.batch);
+        return new CsrGraph<>(loaded);
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        for (String name : queries.keySet()) {
+            Function<Map<String, String>, String> query = queries.get(name);
+            server.createContext("/" + name, exchange -> respond(exchange, name, () -> query.apply(parameters(exchange))));
+        }
+        server.createContext("/batch", exchange -> respond(exchange, "batch", () -> batch(exchange)));
+        server.createContext("/stats", exchange -> respond(exchange, "stats", this::stats));
+        server.setExecutor(newExecutor());
+        server.start();
+    }
+
+    public void stop() {
+        if(server != null)
+            server.stop(0);
+    }
+
+    // Virtual threads from Java 21 on, looked up by name so that the class
+    // still compiles and runs on 17.
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private interface Body {
+        String get() throws IOException;
+    }
+
+    private void respond(HttpExchange exchange, String endpoint, Body body) throws IOException {
+        long start = System.nanoTime();
+        int status = 200;
+        String json;
+        try {
+            json = body.get();
+        } catch (NoSuchElementException e) {
+            status = 404;
+            json = error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            json = error(e.getMessage());
+        } catch (RuntimeException e) {
+            // Anything else is a bug here, but the client still gets an
+            // answer instead of a connection that is never closed.
+            status = 500;
+            json = error(e.toString());
+        }
+
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        latencies.get(endpoint).record(System.nanoTime() - start);
+    }
+
+    private String route(Map<String, String> parameters) {
+        Place from = place(parameters, "from");
+        Place to = place(parameters, "to");
+        PathMode mode = parameters.containsKey("mode") ? PathMode.valueOf(parameters.get("mode").toUpperCase()) : PathMode.FASTEST;
+        List<Edge<Place>> path = graph.getPath(from, to, mode);
+        if(path == null)
+            return "{\"found\":false}";
+
+        StringBuilder json = new StringBuilder("{\"found\":true,");
+        return appendPath(json, path).append('}').toString();
+    }
+
+    // Up to k routes, the fastest first, each with what finding it cost.
+    private String alternatives(Map<String, String> parameters) {
+        Place from = place(parameters, "from");
+        Place to = place(parameters, "to");
+        int k = number(parameters, "k", 3);
+        if(k > MAX_ROUTES)
+            throw new IllegalArgumentException("At most " + MAX_ROUTES + " routes: " + k);
+        KShortestPaths.Method method = parameters.containsKey("method")
+                ? KShortestPaths.Method.valueOf(parameters.get("method").toUpperCase()) : KShortestPaths.Method.YEN;
+        KShortestPaths<Place> found = KShortestPaths.find(graph, from, to, k, method);
+
+        StringBuilder json = new StringBuilder("{\"method\":").append(quote(method.name())).append(",\"routes\":[");
+        for (int i = 0; i < found.size(); i++) {
+            if(i > 0)
+                json.append(',');
+            json.append("{\"searches\":").append(found.getSearches(i))
+                    .append(",\"nodesSettled\":").append(found.getNodesSettled(i))
+                    .append(",\"micros\":").append(found.getNanos(i) / 1000).append(',');
+            appendPath(json, found.getPaths().get(i)).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static StringBuilder appendPath(StringBuilder json, List<Edge<Place>> path) {
+        long weight = 0;
+        for (Edge<Place> e : path)
+            weight += e.getWeight();
+        json.append("\"weight\":").append(weight).append(",\"edges\":[");
+        for (int i = 0; i < path.size(); i++) {
+            Edge<Place> e = path.get(i);
+            if(i > 0)
+                json.append(',');
+            json.append("{\"to\":").append(quote(e.getDestination().getName()))
+                    .append(",\"name\":").append(quote(e.getName()))
+                    .append(",\"weight\":").append(e.getWeight()).append('}');
+        }
+        return json.append(']');
+    }
+
+    private String exists(Map<String, String> parameters) {
+        return "{\"exists\":" + graph.pathExists(place(parameters, "from"), place(parameters, "to")) + "}";
+    }
+
+    private String edge(Map<String, String> parameters) {
+        Edge<Place> edge = graph.getEdgeBetween(place(parameters, "from"), place(parameters, "to"));
+        if(edge == null)
+            return "{\"found\":false}";
+        return "{\"found\":true,\"name\":" + quote(edge.getName()) + ",\"weight\":" + edge.getWeight() + "}";
+    }
+
+    private String nearest(Map<String, String> parameters) {
+        double x = coordinate(parameters, "x");
+        double y = coordinate(parameters, "y");
+        Place place = index.nearest(x, y);
+        if(place == null)
+            return "{\"found\":false}";
+        return "{\"found\":true,\"name\":" + quote(place.getName()) + ",\"x\":" + place.getX() + ",\"y\":" + place.getY()
+                + ",\"distance\":" + Math.hypot(place.getX() - x, place.getY() - y) + "}";
+    }
+
+    private String complete(Map<String, String> parameters) {
+        String prefix = parameters.get("prefix");
+        if(prefix == null)
+            throw new IllegalArgumentException("Missing parameter: prefix");
+        return names(names.withPrefix(prefix, number(parameters, "limit", 10)));
+    }
+
+    private String similar(Map<String, String> parameters) {
+        String name = parameters.get("name");
+        if(name == null)
+            throw new IllegalArgumentException("Missing parameter: name");
+        return names(names.similar(name, number(parameters, "distance", 2), number(parameters, "limit", 10)));
+    }
+
+    private static String names(List<Place> found) {
+        StringBuilder json = new StringBuilder("{\"names\":[");
+        for (int i = 0; i < found.size(); i++) {
+            if(i > 0)
+                json.append(',');
+            json.append(quote(found.get(i).getName()));
+        }
+        return json.append("]}").toString();
+    }
+
+    // Answers each line of the request body in order, a failing line gives
+    // an error in its place without failing the others.
+    private String batch(HttpExchange exchange) throws IOException {
+        if(!"POST".equals(exchange.getRequestMethod()))
+            throw new IllegalArgumentException("Batches are sent with POST");
+
+        StringBuilder json = new StringBuilder("[");
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = in.readLine()) != null) {
+                if(line.isBlank())
+                    continue;
+                if(json.length() > 1)
+                    json.append(',');
+                long start = System.nanoTime();
+                try {
+                    String[] fields = line.split(";");
+                    Function<Map<String, String>, String> query = fields.length == 0 ? null : queries.get(fields[0]);
+                    if(query == null)
+                        throw new IllegalArgumentException("Not a query: " + line);
+                    List<String> keys = parameterNames.get(fields[0]);
+                    Map<String, String> parameters = new HashMap<>();
+                    for (int i = 1; i < fields.length && i <= keys.size(); i++)
+                        parameters.put(keys.get(i - 1), fields[i]);
+                    json.append(query.apply(parameters));
+                    latencies.get(fields[0]).record(System.nanoTime() - start);
+                } catch (NoSuchElementException | IllegalArgumentException e) {
+                    json.append(error(e.getMessage()));
+                } catch (RuntimeException e) {
+                    json.append(error(e.toString()));
+                }
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    private String stats() {
+        StringBuilder json = new StringBuilder("{\"places\":").append(names.size())
+                .append(",\"uptimeSeconds\":").append((System.nanoTime() - started) / 1_000_000_000L)
+                .append(",\"endpoints\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyRecorder> entry : latencies.entrySet()) {
+            if(!first)
+                json.append(',');
+            first = false;
+            json.append(quote(entry.getKey())).append(':').append(entry.getValue());
+        }
+        return json.append("}}").toString();
+    }
+
+    private Place place(Map<String, String> parameters, String key) {
+        String name = parameters.get(key);
+        if(name == null)
+            throw new IllegalArgumentException("Missing parameter: " + key);
+        List<Place> found = names.get(name);
+        if(found.isEmpty()) {
+            List<Place> similar = names.similar(name, 2, 1);
+            throw new NoSuchElementException("Unknown place: " + name
+                    + (similar.isEmpty() ? "" : ", did you mean " + similar.get(0).getName() + "?"));
+        }
+        return found.get(0);
+    }
+
+    private static int number(Map<String, String> parameters, String key, int otherwise) {
+        String value = parameters.get(key);
+        if(value == null)
+            return otherwise;
+        try {
+            int number = Integer.parseInt(value);
+            if(number < 0)
+                throw new IllegalArgumentException("Must not be negative: " + key);
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static double coordinate(Map<String, String> parameters, String key) {
+        String value = parameters.get(key);
+        if(value == null)
+            throw new IllegalArgumentException("Missing parameter: " + key);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a coordinate: " + value);
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int split = pair.indexOf('=');
+            if(split > 0)
+                parameters.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(String.valueOf(message)) + "}";
+    }
+
+    private static String quote(String s) {
+        StringBuilder json = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                default:
+                    if(c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    // Keeps the latest samples in a ring, percentiles are taken over those.
+    private static class LatencyRecorder {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private long count;
+
+        synchronized void record(long nanos) {
+            samples[(int) (count++ % samples.length)] = nanos;
+        }
+
+        synchronized long percentile(double p) {
+            int n = (int) Math.min(count, samples.length);
+            if(n == 0)
+                return 0;
+            long[] sorted = Arrays.copyOf(samples, n);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(n - 1, Math.ceil(p * n) - 1)];
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "{\"count\":" + count + ",\"p50Micros\":" + percentile(0.5) / 1000
+                    + ",\"p99Micros\":" + percentile(0.99) / 1000 + "}";
+        }
+    }
+
+    // Collects a file into one batch for the graph, the text format lists
+    // every connection from both of its places and the batch keeps the first.
+    private static class Loader implements GraphSink {
+        private final GraphBuilder<Place> batch = new GraphBuilder<>();
+        private final Map<String, Place> places = new HashMap<>();
+
+        @Override
+        public void image(String location) {
+        }
+
+        @Override
+        public void place(String name, double x, double y) {
+            if(places.containsKey(name))
+                return;
+            Place place = new Place(name, x, y);
+            places.put(name, place);
+            batch.add(place);
+        }
+
+        @Override
+        public void connection(String from, String to, String name, int weight) {
+            Place a = places.get(from);
+            Place b = places.get(to);
+            if(a == null || b == null)
+                return;
+            batch.connect(a, b, name, weight);
+        }
+    }
+}
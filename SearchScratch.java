@@ -0,0 +1,74 @@
+// Scratch space for the searches over node ids, one set per thread, shared
+// by every graph and every call and grown to the largest graph searched on
+// the thread. A search takes the thread's set with acquire and gives it back
+// with release in a finally block. A search that starts while it is taken,
+// such as a pool task run by a thread that is waiting on a join, gets a set
+// of its own instead.
+final class SearchScratch {
+
+    private static final ThreadLocal<SearchScratch> CURRENT = ThreadLocal.withInitial(SearchScratch::new);
+
+    private final IndexedMinHeap queue = new IndexedMinHeap();
+    private final IndexedMinHeap backwardQueue = new IndexedMinHeap();
+    private int[] previous = new int[0];
+    private int[] backwardPrevious = new int[0];
+    private double[] distances = new double[0];
+    // Left all false by every search that sets some.
+    private boolean[] blocked = new boolean[0];
+    private boolean taken;
+
+    private SearchScratch() {
+    }
+
+    static SearchScratch acquire() {
+        SearchScratch scratch = CURRENT.get();
+        if(scratch.taken)
+            scratch = new SearchScratch();
+        scratch.taken = true;
+        return scratch;
+    }
+
+    void release() {
+        taken = false;
+    }
+
+    // The queues are cleared, the arrays hold whatever the last search left
+    // in them.
+    IndexedMinHeap queue() {
+        queue.clear();
+        return queue;
+    }
+
+    IndexedMinHeap backwardQueue() {
+        backwardQueue.clear();
+        return backwardQueue;
+    }
+
+    int[] previous(int n) {
+        if(previous.length < n)
+            previous = new int[grow(previous.length, n)];
+        return previous;
+    }
+
+    int[] backwardPrevious(int n) {
+        if(backwardPrevious.length < n)
+            backwardPrevious = new int[grow(backwardPrevious.length, n)];
+        return backwardPrevious;
+    }
+
+    double[] distances(int n) {
+        if(distances.length < n)
+            distances = new double[grow(distances.length, n)];
+        return distances;
+    }
+
+    boolean[] blocked(int n) {
+        if(blocked.length < n)
+            blocked = new boolean[grow(blocked.length, n)];
+        return blocked;
+    }
+
+    private static int grow(int length, int n) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(n, 2L * length));
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Counters for one path search. The wall time is always taken; the bytes
+// allocated only while GraphMetrics is enabled, -1 otherwise; and the nodes
+// in the order they were expanded only while tracing is enabled.
+public class SearchStats {
+
+    private final long start = System.nanoTime();
+    private final long allocatedBefore = GraphMetrics.allocatedBytes();
+    private final List<String> trace = GraphMetrics.isTraceOn() ? new ArrayList<>() : null;
+    private PathMode mode;
+    private int nodesExpanded;
+    private int edgesRelaxed;
+    private int queuePeak;
+    private long nanos;
+    private long allocatedBytes = -1;
+
+    // The queue only grows between expansions, so its size as a node is
+    // taken off is the largest it has been since the last one.
+    void nodeExpanded(Object node, int queueSize) {
+        nodesExpanded++;
+        if(queueSize > queuePeak)
+            queuePeak = queueSize;
+        if(trace != null)
+            trace.add(node + " (queue " + queueSize + ")");
+    }
+
+    void nodeExpanded(Object node, double distance, int queueSize) {
+        nodesExpanded++;
+        if(queueSize > queuePeak)
+            queuePeak = queueSize;
+        if(trace != null)
+            trace.add(node + " at " + distance + " (queue " + queueSize + ")");
+    }
+
+    void edgeRelaxed() {
+        edgesRelaxed++;
+    }
+
+    void finish(PathMode mode) {
+        this.mode = mode;
+        nanos = System.nanoTime() - start;
+        if(allocatedBefore >= 0)
+            allocatedBytes = GraphMetrics.allocatedBytes() - allocatedBefore;
+        GraphMetrics.searchFinished(this);
+    }
+
+    public PathMode getMode() {
+        return mode;
+    }
+
+    public int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public int getEdgesRelaxed() {
+        return edgesRelaxed;
+    }
+
+    public int getQueuePeak() {
+        return queuePeak;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    // Empty unless tracing was enabled when the search started.
+    public List<String> getTrace() {
+        return trace == null ? Collections.emptyList() : Collections.unmodifiableList(trace);
+    }
+
+    @Override
+    public String toString() {
+        return nodesExpanded + " nodes expanded, " + edgesRelaxed + " edges relaxed, queue peak " + queuePeak
+                + ", " + nanos / 1000 + " us" + (allocatedBytes < 0 ? "" : ", " + allocatedBytes + " bytes allocated");
+    }
+}
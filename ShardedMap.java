@@ -0,0 +1,163 @@
+import java.util.*;
+
+// Immutable map split into shards by hash, for the versions of a
+// ConcurrentGraph. A changed copy shares every shard it does not change, so
+// a write that touches a few keys copies the array of shards and those
+// shards, a small multiple of the square root of the size, instead of every
+// entry. The shards are doubled whenever the map grows past a sixty-fourth
+// of their number squared: that keeps the shards at a few hundred keys,
+// since copying the array costs much less per slot than copying a shard
+// does per key, and it costs an amortized constant per key added. Empty
+// shards are null.
+final class ShardedMap<K, V> extends AbstractMap<K, V> {
+
+    private static final ShardedMap<?, ?> EMPTY = new ShardedMap<>(newShards(1), 0);
+
+    private final Map<K, V>[] shards;
+    private final int size;
+    private Set<Entry<K, V>> entries;
+
+    private ShardedMap(Map<K, V>[] shards, int size) {
+        this.shards = shards;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> ShardedMap<K, V> empty() {
+        return (ShardedMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Map<K, V>[] newShards(int count) {
+        return (Map<K, V>[]) new Map[count];
+    }
+
+    // Takes the top bits of a multiplicative hash, as the low bits are the
+    // ones the HashMap of the shard picks its buckets by.
+    private static int shardOf(Object key, int count) {
+        if(count == 1)
+            return 0;
+        return (key.hashCode() * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(count));
+    }
+
+    @Override
+    public V get(Object key) {
+        Map<K, V> shard = shards[shardOf(key, shards.length)];
+        return shard == null ? null : shard.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Map<K, V> shard = shards[shardOf(key, shards.length)];
+        return shard != null && shard.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if(entries == null) {
+            entries = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+                        private Iterator<Entry<K, V>> shard = Collections.emptyIterator();
+
+                        @Override
+                        public boolean hasNext() {
+                            while(!shard.hasNext() && next < shards.length) {
+                                Map<K, V> m = shards[next++];
+                                if(m != null)
+                                    shard = Collections.unmodifiableMap(m).entrySet().iterator();
+                            }
+                            return shard.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            if(!hasNext())
+                                throw new NoSuchElementException();
+                            return shard.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entries;
+    }
+
+    Editor edit() {
+        return new Editor();
+    }
+
+    // Changes to a copy of the map. Each shard is copied the first time a
+    // change reaches it, and build gives the new map.
+    final class Editor {
+        private final Map<K, V>[] next = shards.clone();
+        private final boolean[] copied = new boolean[shards.length];
+        private int nextSize = size;
+
+        V get(Object key) {
+            Map<K, V> shard = next[shardOf(key, next.length)];
+            return shard == null ? null : shard.get(key);
+        }
+
+        boolean containsKey(Object key) {
+            Map<K, V> shard = next[shardOf(key, next.length)];
+            return shard != null && shard.containsKey(key);
+        }
+
+        void put(K key, V value) {
+            if(editable(shardOf(key, next.length)).put(key, value) == null)
+                nextSize++;
+        }
+
+        void remove(Object key) {
+            int i = shardOf(key, next.length);
+            if(next[i] == null || !next[i].containsKey(key))
+                return;
+            editable(i).remove(key);
+            nextSize--;
+        }
+
+        private Map<K, V> editable(int i) {
+            if(!copied[i]) {
+                copied[i] = true;
+                next[i] = next[i] == null ? new HashMap<>() : new HashMap<>(next[i]);
+            }
+            return next[i];
+        }
+
+        ShardedMap<K, V> build() {
+            if(nextSize == 0)
+                return empty();
+            if(64L * nextSize <= (long) next.length * next.length)
+                return new ShardedMap<>(next, nextSize);
+
+            int count = next.length * 2;
+            while(64L * nextSize > (long) count * count)
+                count *= 2;
+            Map<K, V>[] resharded = newShards(count);
+            for (Map<K, V> shard : next) {
+                if(shard == null)
+                    continue;
+                for (Entry<K, V> e : shard.entrySet()) {
+                    int i = shardOf(e.getKey(), count);
+                    if(resharded[i] == null)
+                        resharded[i] = new HashMap<>();
+                    resharded[i].put(e.getKey(), e.getValue());
+                }
+            }
+            return new ShardedMap<>(resharded, nextSize);
+        }
+    }
+}
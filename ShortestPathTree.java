@@ -0,0 +1,234 @@
+import java.util.*;
+
+// Lowest weight from one root to every reachable node, kept up to date as the
+// graph changes instead of being recomputed. A connection that gets cheaper or
+// is added only lets distances shrink, so a Dijkstra is run outwards from
+// where it helps. One that gets dearer or is removed only matters if it is in
+// the tree: the subtree below it loses its distances, each of its nodes is
+// seeded from its best neighbour outside the subtree, and a Dijkstra inside
+// the subtree settles the rest (Ramalingam and Reps).
+public class ShortestPathTree<T> implements GraphListener<T> {
+
+    private final Graph<T> graph;
+    private final T root;
+    private final Map<T, Long> distances = new HashMap<>();
+    private final Map<T, T> parents = new HashMap<>();
+    private int lastTouched;
+
+    public ShortestPathTree(Graph<T> graph, T root) {
+        if(!graph.getNodes().contains(root))
+            throw new NoSuchElementException();
+        this.graph = graph;
+        this.root = root;
+        distances.put(root, 0L);
+        lastTouched = propagate(List.of(root));
+        graph.addListener(this);
+    }
+
+    // Stops following the graph, the tree keeps its last state.
+    public void detach() {
+        graph.removeListener(this);
+    }
+
+    public T getRoot() {
+        return root;
+    }
+
+    // Total weight from the root, or -1 when the node cannot be reached.
+    public long getDistance(T node) {
+        Long distance = distances.get(node);
+        return distance == null ? -1 : distance;
+    }
+
+    public boolean isReachable(T node) {
+        return distances.containsKey(node);
+    }
+
+    // The tree's path from the root, or null when the node cannot be reached.
+    public List<Edge<T>> getPath(T node) {
+        if(!distances.containsKey(node))
+            return null;
+        List<Edge<T>> result = new ArrayList<>();
+        T current = node;
+        while(!current.equals(root)) {
+            T parent = parents.get(current);
+            result.add(graph.getEdgeBetween(parent, current));
+            current = parent;
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public int size() {
+        return distances.size();
+    }
+
+    // Nodes whose distance was looked at again by the most recent update, or
+    // by building the tree.
+    public int getLastUpdateTouched() {
+        return lastTouched;
+    }
+
+    @Override
+    public void nodeAdded(T node) {
+        lastTouched = 0;
+        if(node.equals(root)) {
+            distances.put(root, 0L);
+            lastTouched = 1;
+        }
+    }
+
+    @Override
+    public void nodeRemoved(T node) {
+        // Its connections are already gone, only the root is still in the tree.
+        lastTouched = 0;
+        if(node.equals(root)) {
+            lastTouched = distances.size();
+            distances.clear();
+            parents.clear();
+        }
+    }
+
+    @Override
+    public void connected(T node1, T node2, int weight) {
+        lastTouched = improve(node1, node2, weight);
+    }
+
+    @Override
+    public void disconnected(T node1, T node2, int weight) {
+        lastTouched = detachSubtree(node1, node2);
+    }
+
+    @Override
+    public void weightChanged(T node1, T node2, int oldWeight, int newWeight) {
+        if(newWeight < oldWeight)
+            lastTouched = improve(node1, node2, newWeight);
+        else if(newWeight > oldWeight)
+            lastTouched = detachSubtree(node1, node2);
+        else
+            lastTouched = 0;
+    }
+
+    @Override
+    public void cleared() {
+        lastTouched = distances.size();
+        distances.clear();
+        parents.clear();
+    }
+
+    // The connection got cheaper or is new, see whether it shortens the way to
+    // either end and spread the improvement from there.
+    private int improve(T node1, T node2, int weight) {
+        List<T> seeds = new ArrayList<>(2);
+        if(offer(node1, node2, weight))
+            seeds.add(node2);
+        else if(offer(node2, node1, weight))
+            seeds.add(node1);
+        return seeds.isEmpty() ? 0 : propagate(seeds);
+    }
+
+    private boolean offer(T from, T to, int weight) {
+        Long distance = distances.get(from);
+        if(distance == null)
+            return false;
+        long tentative = distance + weight;
+        Long current = distances.get(to);
+        if(current != null && tentative >= current)
+            return false;
+        distances.put(to, tentative);
+        parents.put(to, from);
+        return true;
+    }
+
+    // The connection got dearer or is gone. If it is a tree edge, the subtree
+    // hanging below it is computed again.
+    private int detachSubtree(T node1, T node2) {
+        T child;
+        if(node1.equals(parents.get(node2)))
+            child = node2;
+        else if(node2.equals(parents.get(node1)))
+            child = node1;
+        else
+            return 0;
+
+        Set<T> affected = new HashSet<>();
+        Deque<T> stack = new ArrayDeque<>();
+        affected.add(child);
+        stack.push(child);
+        while(!stack.isEmpty()) {
+            T current = stack.pop();
+            for (Edge<T> e : graph.getEdgesFrom(current)) {
+                T next = e.getDestination();
+                if(current.equals(parents.get(next)) && affected.add(next))
+                    stack.push(next);
+            }
+        }
+        for (T node : affected) {
+            distances.remove(node);
+            parents.remove(node);
+        }
+
+        List<T> seeds = new ArrayList<>();
+        for (T node : affected) {
+            long best = Long.MAX_VALUE;
+            T parent = null;
+            for (Edge<T> e : graph.getEdgesFrom(node)) {
+                Long distance = distances.get(e.getDestination());
+                if(distance != null && distance + e.getWeight() < best) {
+                    best = distance + e.getWeight();
+                    parent = e.getDestination();
+                }
+            }
+            if(parent != null) {
+                distances.put(node, best);
+                parents.put(node, parent);
+                seeds.add(node);
+            }
+        }
+        propagate(seeds);
+        return affected.size();
+    }
+
+    // Dijkstra from nodes whose distances were just lowered, carrying on as
+    // long as it lowers the distances of their neighbours. Returns the number
+    // of nodes settled.
+    private int propagate(List<T> seeds) {
+        Map<T, Integer> ids = new HashMap<>();
+        List<T> byId = new ArrayList<>();
+        IndexedMinHeap queue = new IndexedMinHeap();
+        for (T seed : seeds) {
+            ids.put(seed, byId.size());
+            queue.offer(byId.size(), distances.get(seed));
+            byId.add(seed);
+        }
+
+        int settled = 0;
+        while(!queue.isEmpty()) {
+            T current = byId.get(queue.poll());
+            settled++;
+            long distance = distances.get(current);
+            for (Edge<T> e : graph.getEdgesFrom(current)) {
+                T next = e.getDestination();
+                long tentative = distance + e.getWeight();
+                Long known = distances.get(next);
+                if(known != null && tentative >= known)
+                    continue;
+                distances.put(next, tentative);
+                parents.put(next, current);
+                Integer id = ids.get(next);
+                if(id == null) {
+                    id = byId.size();
+                    ids.put(next, id);
+                    byId.add(next);
+                }
+                queue.offer(id, tentative);
+            }
+        }
+        return settled;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortestPathTree[root " + root + ", " + distances.size() + " reachable]";
+    }
+}
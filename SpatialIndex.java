@@ -0,0 +1,224 @@
+import java.util.*;
+
+// Places of a graph in a uniform grid of square cells, for finding the place
+// nearest to a point and the places inside a rectangle without going through
+// every node. The cell size is picked from the spread of the places when the
+// index is built, so that a cell holds about two of them; either query then
+// only looks at the cells around its answer. The index follows the graph's
+// additions and removals through its listener.
+//
+// Like ShortestPathTree it is not synchronized: edits and queries must come
+// from one thread, or from any number of threads once the graph stops
+// changing.
+public class SpatialIndex<T extends Vertex> implements GraphListener<T> {
+
+    private static final double DEFAULT_CELL_SIZE = 64;
+
+    private final Graph<T> graph;
+    private final double cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    // Bounds of the cells that were in use since the last clear.
+    private int minColumn = Integer.MAX_VALUE;
+    private int maxColumn = Integer.MIN_VALUE;
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int size;
+
+    public SpatialIndex(Graph<T> graph) {
+        this(graph, cellSizeFor(graph.getNodes()));
+    }
+
+    public SpatialIndex(Graph<T> graph, double cellSize) {
+        if(!(cellSize > 0))
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        this.graph = graph;
+        this.cellSize = cellSize;
+        for (T node : graph.getNodes())
+            nodeAdded(node);
+        graph.addListener(this);
+    }
+
+    // Stops following the graph, the index keeps its last state.
+    public void detach() {
+        graph.removeListener(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    // The place closest to the point, or null when there are none.
+    public T nearest(double x, double y) {
+        return nearest(x, y, Double.POSITIVE_INFINITY);
+    }
+
+    // The place closest to the point and at most maxDistance from it, or
+    // null when there is none that close. Looks through square rings of
+    // cells around the point, cut to the cells that were ever in use, until
+    // the next ring is further away than the best place found.
+    public T nearest(double x, double y, double maxDistance) {
+        if(cells.isEmpty())
+            return null;
+        int column = cell(x);
+        int row = cell(y);
+        int first = Math.max(0, Math.max(Math.max(minColumn - column, column - maxColumn), Math.max(minRow - row, row - maxRow)));
+        int last = Math.max(Math.max(column - minColumn, maxColumn - column), Math.max(row - minRow, maxRow - row));
+        Nearest<T> nearest = new Nearest<>(maxDistance * maxDistance);
+        long looked = 0;
+        for (int ring = first; ring <= last; ring++) {
+            for (int c = Math.max(column - ring, minColumn); c <= Math.min(column + ring, maxColumn); c++) {
+                if(c == column - ring || c == column + ring) {
+                    for (int r = Math.max(row - ring, minRow); r <= Math.min(row + ring, maxRow); r++, looked++)
+                        nearest.offer(cells.get(key(c, r)), x, y);
+                } else {
+                    if(row - ring >= minRow)
+                        nearest.offer(cells.get(key(c, row - ring)), x, y);
+                    if(row + ring <= maxRow)
+                        nearest.offer(cells.get(key(c, row + ring)), x, y);
+                    looked += 2;
+                }
+            }
+            // Anything beyond the next ring is at least this far away.
+            double reached = ring * cellSize;
+            if(reached * reached >= nearest.best)
+                break;
+            // Mostly empty rings, one pass over the cells in use is cheaper.
+            if(looked > 4L * cells.size()) {
+                for (List<T> places : cells.values())
+                    nearest.offer(places, x, y);
+                break;
+            }
+        }
+        return nearest.place;
+    }
+
+    private static class Nearest<T extends Vertex> {
+        private T place;
+        private double best;
+
+        Nearest(double best) {
+            this.best = best;
+        }
+
+        void offer(List<T> places, double x, double y) {
+            if(places == null)
+                return;
+            for (T candidate : places) {
+                double d = distanceSquared(candidate, x, y);
+                if(d <= best) {
+                    best = d;
+                    place = candidate;
+                }
+            }
+        }
+    }
+
+    // The places inside the rectangle, borders included, in no particular
+    // order.
+    public List<T> within(double minX, double minY, double maxX, double maxY) {
+        List<T> result = new ArrayList<>();
+        int column0 = cell(minX);
+        int column1 = cell(maxX);
+        int row0 = cell(minY);
+        int row1 = cell(maxY);
+        if(column1 < column0 || row1 < row0)
+            return result;
+        if((long) (column1 - column0 + 1) * (row1 - row0 + 1) <= cells.size()) {
+            for (int column = column0; column <= column1; column++)
+                for (int row = row0; row <= row1; row++)
+                    addWithin(cells.get(key(column, row)), minX, minY, maxX, maxY, result);
+        } else {
+            // Fewer cells are in use than the rectangle covers.
+            for (Map.Entry<Long, List<T>> entry : cells.entrySet()) {
+                int column = (int) (entry.getKey() >> 32);
+                int row = (int) (long) entry.getKey();
+                if(column >= column0 && column <= column1 && row >= row0 && row <= row1)
+                    addWithin(entry.getValue(), minX, minY, maxX, maxY, result);
+            }
+        }
+        return result;
+    }
+
+    private static <T extends Vertex> void addWithin(List<T> places, double minX, double minY, double maxX, double maxY, List<T> result) {
+        if(places == null)
+            return;
+        for (T place : places)
+            if(place.getX() >= minX && place.getX() <= maxX && place.getY() >= minY && place.getY() <= maxY)
+                result.add(place);
+    }
+
+    @Override
+    public void nodeAdded(T node) {
+        int column = cell(node.getX());
+        int row = cell(node.getY());
+        cells.computeIfAbsent(key(column, row), k -> new ArrayList<>()).add(node);
+        minColumn = Math.min(minColumn, column);
+        maxColumn = Math.max(maxColumn, column);
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        size++;
+    }
+
+    @Override
+    public void nodeRemoved(T node) {
+        long key = key(cell(node.getX()), cell(node.getY()));
+        List<T> places = cells.get(key);
+        if(places == null || !places.remove(node))
+            return;
+        if(places.isEmpty())
+            cells.remove(key);
+        size--;
+    }
+
+    @Override
+    public void cleared() {
+        cells.clear();
+        minColumn = Integer.MAX_VALUE;
+        maxColumn = Integer.MIN_VALUE;
+        minRow = Integer.MAX_VALUE;
+        maxRow = Integer.MIN_VALUE;
+        size = 0;
+    }
+
+    // About two places to a cell over the box the places are spread across.
+    private static double cellSizeFor(Collection<? extends Vertex> places) {
+        if(places.size() < 2)
+            return DEFAULT_CELL_SIZE;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Vertex place : places) {
+            minX = Math.min(minX, place.getX());
+            minY = Math.min(minY, place.getY());
+            maxX = Math.max(maxX, place.getX());
+            maxY = Math.max(maxY, place.getY());
+        }
+        double side = Math.max(maxX - minX, maxY - minY);
+        if(!(side > 0) || Double.isInfinite(side))
+            return DEFAULT_CELL_SIZE;
+        double area = Math.max(maxX - minX, side / places.size()) * Math.max(maxY - minY, side / places.size());
+        return Math.sqrt(2 * area / places.size());
+    }
+
+    private static double distanceSquared(Vertex place, double x, double y) {
+        double dx = place.getX() - x;
+        double dy = place.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int column, int row) {
+        return (long) column << 32 | (row & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public String toString() {
+        return "SpatialIndex[" + size + " places in " + cells.size() + " cells of " + cellSize + "]";
+    }
+}
@@ -0,0 +1,256 @@
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Graph whose reads run against immutable, numbered versions. A query that
+// needs several calls to agree pins one with snapshot(). A weight change
+// makes the next version with CsrGraph.withConnectionWeight, which shares
+// the whole adjacency and all but two weight chunks with the previous
+// version, so traffic updates stay cheap while old versions are in use.
+// Changes to the nodes or connections rebuild the adjacency from a private
+// ListGraph that holds the latest state. Listeners are called under the
+// write lock once the new version is current.
+public class VersionedGraph<T> implements Graph<T> {
+
+    public static class Version<T> {
+        private final long number;
+        private final CsrGraph<T> graph;
+
+        Version(long number, CsrGraph<T> graph) {
+            this.number = number;
+            this.graph = graph;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        // Read-only, changing it throws UnsupportedOperationException.
+        public Graph<T> getGraph() {
+            return graph;
+        }
+    }
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ListGraph<T> latest = new ListGraph<>();
+    private volatile Version<T> current;
+    private final List<GraphListener<T>> listeners = new CopyOnWriteArrayList<>();
+
+    public VersionedGraph() {
+        current = new Version<>(0, new CsrGraph<>(latest));
+    }
+
+    public VersionedGraph(Graph<T> source) {
+        GraphBuilder<T> batch = new GraphBuilder<>(source.getNodes().size(), 0);
+        for (T node : source.getNodes()) {
+            batch.add(node);
+            for (Edge<T> e : source.getEdgesFrom(node))
+                batch.connect(node, e.getDestination(), e.getName(), e.getWeight());
+        }
+        latest.addAll(batch);
+        current = new Version<>(0, new CsrGraph<>(latest));
+    }
+
+    public Version<T> snapshot() {
+        return current;
+    }
+
+    public long getVersion() {
+        return current.number;
+    }
+
+    @Override
+    public void setConnectionWeight(T node1, T node2, int weight) {
+        writeLock.lock();
+        try {
+            CsrGraph<T> next = current.graph.withConnectionWeight(node1, node2, weight);
+            int oldWeight = latest.getEdgeBetween(node1, node2).getWeight();
+            latest.setConnectionWeight(node1, node2, weight);
+            current = new Version<>(current.number + 1, next);
+            for (GraphListener<T> listener : listeners)
+                listener.weightChanged(node1, node2, oldWeight, weight);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void add(T node) {
+        writeLock.lock();
+        try {
+            if(latest.getNodes().contains(node))
+                return;
+            latest.add(node);
+            rebuild();
+            for (GraphListener<T> listener : listeners)
+                listener.nodeAdded(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // The whole batch makes one new version.
+    @Override
+    public void addAll(GraphBuilder<T> batch) {
+        writeLock.lock();
+        try {
+            List<Consumer<GraphListener<T>>> changes = new ArrayList<>();
+            GraphListener<T> recorder = new GraphListener<>() {
+                @Override
+                public void nodeAdded(T node) {
+                    changes.add(listener -> listener.nodeAdded(node));
+                }
+
+                @Override
+                public void connected(T node1, T node2, int weight) {
+                    changes.add(listener -> listener.connected(node1, node2, weight));
+                }
+            };
+            latest.addListener(recorder);
+            try {
+                latest.addAll(batch);
+            } finally {
+                latest.removeListener(recorder);
+            }
+            if(changes.isEmpty())
+                return;
+            rebuild();
+            for (GraphListener<T> listener : listeners)
+                for (Consumer<GraphListener<T>> change : changes)
+                    change.accept(listener);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void connect(T node1, T node2, String name, int weight) {
+        writeLock.lock();
+        try {
+            latest.connect(node1, node2, name, weight);
+            rebuild();
+            for (GraphListener<T> listener : listeners)
+                listener.connected(node1, node2, weight);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void disconnect(T node1, T node2) {
+        writeLock.lock();
+        try {
+            Edge<T> edge = latest.getEdgeBetween(node1, node2);
+            latest.disconnect(node1, node2);
+            rebuild();
+            for (GraphListener<T> listener : listeners)
+                listener.disconnected(node1, node2, edge.getWeight());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(T node) {
+        writeLock.lock();
+        try {
+            // With listeners each connection goes in a version of its own.
+            if(!listeners.isEmpty() && latest.getNodes().contains(node)) {
+                List<T> neighbours = new ArrayList<>();
+                for (Edge<T> e : latest.getEdgesFrom(node))
+                    neighbours.add(e.getDestination());
+                for (T d : neighbours)
+                    disconnect(node, d);
+            }
+            latest.remove(node);
+            rebuild();
+            for (GraphListener<T> listener : listeners)
+                listener.nodeRemoved(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        writeLock.lock();
+        try {
+            latest.removeAll();
+            rebuild();
+            for (GraphListener<T> listener : listeners)
+                listener.cleared();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void setHeuristic(Heuristic<T> heuristic) {
+        writeLock.lock();
+        try {
+            latest.setHeuristic(heuristic);
+            rebuild();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void addListener(GraphListener<T> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    @Override
+    public void removeListener(GraphListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    private void rebuild() {
+        current = new Version<>(current.number + 1, new CsrGraph<>(latest));
+    }
+
+    @Override
+    public Set<T> getNodes() {
+        return current.graph.getNodes();
+    }
+
+    @Override
+    public Collection<Edge<T>> getEdgesFrom(T node) {
+        return current.graph.getEdgesFrom(node);
+    }
+
+    @Override
+    public Edge<T> getEdgeBetween(T node1, T node2) {
+        return current.graph.getEdgeBetween(node1, node2);
+    }
+
+    @Override
+    public boolean pathExists(T from, T to) {
+        return current.graph.pathExists(from, to);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to) {
+        return current.graph.getPath(from, to);
+    }
+
+    @Override
+    public List<Edge<T>> getPath(T from, T to, PathMode mode) {
+        return current.graph.getPath(from, to, mode);
+    }
+
+    @Override
+    public List<List<Edge<T>>> getPaths(T from, T to, int k) {
+        return current.graph.getPaths(from, to, k);
+    }
+
+    @Override
+    public int[] getWeightMatrix(List<T> origins, List<T> destinations) {
+        return current.graph.getWeightMatrix(origins, destinations);
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedGraph[version " + current.number + ", " + current.graph + "]";
+    }
+}
@@ -0,0 +1,9 @@
+public interface Vertex {
+
+    String getName();
+
+    double getX();
+
+    double getY();
+
+}
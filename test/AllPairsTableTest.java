@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AllPairsTableTest {
+
+    // With zero weights a node can be equally far along several routes, and
+    // a path stitched from other sources' trees could loop or skip an edge.
+    @Test
+    void pathsOverZeroWeightsFollowTheSourcesTree() {
+        ListGraph<Place> graph = new ListGraph<>();
+        Place a = new Place("A", 0, 0), b = new Place("B", 0, 0), c = new Place("C", 0, 0);
+        for (Place place : List.of(a, b, c))
+            graph.add(place);
+        graph.connect(a, b, "ab", 0);
+        graph.connect(b, c, "bc", 0);
+        graph.connect(a, c, "ac", 0);
+
+        AllPairsTable<Place> table = AllPairsTable.build(graph);
+        for (Place from : List.of(a, b, c))
+            for (Place to : List.of(a, b, c))
+                assertPath(graph, from, to, table.getPath(from, to));
+    }
+
+    @Test
+    void pathsMatchDijkstraOnRandomGraphs() {
+        Random random = new Random(5);
+        for (int round = 0; round < 100; round++) {
+            ListGraph<Place> graph = new ListGraph<>();
+            List<Place> places = new ArrayList<>();
+            int n = 2 + random.nextInt(30);
+            for (int i = 0; i < n; i++) {
+                places.add(new Place("p" + i, 0, 0));
+                graph.add(places.get(i));
+            }
+            for (int i = 0; i < n * 2; i++) {
+                Place from = places.get(random.nextInt(n)), to = places.get(random.nextInt(n));
+                if(from != to && graph.getEdgeBetween(from, to) == null)
+                    graph.connect(from, to, "e", random.nextInt(3) == 0 ? 1 + random.nextInt(5) : 0);
+            }
+
+            AllPairsTable<Place> table = AllPairsTable.build(graph);
+            for (Place from : places) {
+                for (Place to : places) {
+                    List<Edge<Place>> path = table.getPath(from, to);
+                    List<Edge<Place>> expected = graph.getPath(from, to, PathMode.FASTEST);
+                    assertEquals(expected == null, path == null);
+                    if(path != null) {
+                        assertPath(graph, from, to, path);
+                        assertEquals(weight(expected), weight(path));
+                        assertEquals(weight(path), table.getDistance(from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertPath(Graph<Place> graph, Place from, Place to, List<Edge<Place>> path) {
+        assertNotNull(path);
+        Set<Place> visited = new HashSet<>(List.of(from));
+        Place current = from;
+        for (Edge<Place> e : path) {
+            assertNotNull(graph.getEdgeBetween(current, e.getDestination()));
+            current = e.getDestination();
+            assertTrue(visited.add(current), "path visits " + current + " twice");
+        }
+        assertEquals(to, current);
+    }
+
+    private static long weight(List<Edge<Place>> path) {
+        long weight = 0;
+        for (Edge<Place> e : path)
+            weight += e.getWeight();
+        return weight;
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingGraphTest {
+
+    private final CachingGraph<Place> graph = new CachingGraph<>(new ListGraph<>(), 100);
+    private final Place s = new Place("S", 0, 0), x = new Place("X", 0, 0), t = new Place("T", 0, 0);
+    private final Place y = new Place("Y", 0, 0), z = new Place("Z", 0, 0);
+
+    CachingGraphTest() {
+        for (Place place : List.of(s, x, t, y, z))
+            graph.add(place);
+        graph.connect(s, x, "a", 10);
+        graph.connect(x, t, "b", 10);
+        graph.connect(s, y, "c", 1);
+        graph.connect(z, t, "d", 1);
+    }
+
+    // The new connection touches no place on the cached route, yet gives a
+    // shorter one.
+    @Test
+    void newConnectionDropsRoutesItShortens() {
+        assertEquals(20, weight(graph.getPath(s, t, PathMode.FASTEST)));
+        graph.connect(y, z, "e", 1);
+        assertEquals(3, weight(graph.getPath(s, t, PathMode.FASTEST)));
+    }
+
+    @Test
+    void lowerWeightDropsRoutesItShortens() {
+        graph.connect(y, z, "e", 50);
+        assertEquals(20, weight(graph.getPath(s, t, PathMode.FASTEST)));
+        graph.setConnectionWeight(y, z, 1);
+        assertEquals(3, weight(graph.getPath(s, t, PathMode.FASTEST)));
+    }
+
+    @Test
+    void cachedRoutesMatchAnUncachedGraphAcrossEdits() {
+        ListGraph<Place> reference = new ListGraph<>();
+        CachingGraph<Place> cached = new CachingGraph<>(new ListGraph<>(), 50);
+        List<Place> places = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            places.add(new Place("p" + i, 0, 0));
+            reference.add(places.get(i));
+            cached.add(places.get(i));
+        }
+
+        Random random = new Random(9);
+        for (int step = 0; step < 20000; step++) {
+            Place from = places.get(random.nextInt(30)), to = places.get(random.nextInt(30));
+            Edge<Place> edge = reference.getEdgeBetween(from, to);
+            int weight = random.nextInt(20);
+            switch (random.nextInt(6)) {
+                case 0:
+                    if(from != to && edge == null) {
+                        reference.connect(from, to, "e", weight);
+                        cached.connect(from, to, "e", weight);
+                    }
+                    break;
+                case 1:
+                    if(edge != null) {
+                        reference.setConnectionWeight(from, to, weight);
+                        cached.setConnectionWeight(from, to, weight);
+                    }
+                    break;
+                case 2:
+                    if(edge != null) {
+                        reference.disconnect(from, to);
+                        cached.disconnect(from, to);
+                    }
+                    break;
+                default:
+                    assertEquals(weight(reference.getPath(from, to, PathMode.FASTEST)),
+                            weight(cached.getPath(from, to, PathMode.FASTEST)), "step " + step);
+            }
+        }
+    }
+
+    private static long weight(List<Edge<Place>> path) {
+        if(path == null)
+            return -1;
+        long weight = 0;
+        for (Edge<Place> e : path)
+            weight += e.getWeight();
+        return weight;
+    }
+}
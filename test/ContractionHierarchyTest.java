@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContractionHierarchyTest {
+
+    private static final int PLACES = 500;
+
+    private static List<Place> chain(Graph<Place> graph, Random random) {
+        List<Place> places = new ArrayList<>();
+        for (int i = 0; i < PLACES; i++) {
+            places.add(new Place("p" + i, random.nextDouble() * 100, random.nextDouble() * 100));
+            graph.add(places.get(i));
+        }
+        for (int i = 1; i < PLACES; i++)
+            graph.connect(places.get(i - 1), places.get(i), "e", 1 + random.nextInt(9));
+        for (int i = 0; i < PLACES; i++) {
+            Place from = places.get(random.nextInt(PLACES)), to = places.get(random.nextInt(PLACES));
+            if(from != to && graph.getEdgeBetween(from, to) == null)
+                graph.connect(from, to, "e", 1 + random.nextInt(20));
+        }
+        return places;
+    }
+
+    @Test
+    void pathsMatchDijkstra() {
+        Random random = new Random(3);
+        ListGraph<Place> graph = new ListGraph<>();
+        List<Place> places = chain(graph, random);
+        ContractionHierarchy<Place> ch = ContractionHierarchy.build(graph);
+        for (int i = 0; i < 300; i++) {
+            Place from = places.get(random.nextInt(PLACES)), to = places.get(random.nextInt(PLACES));
+            assertEquals(weight(graph.getPath(from, to, PathMode.FASTEST)), weight(ch.getPath(from, to)));
+        }
+    }
+
+    // Another thread edits the graph while the index is built. The index
+    // must describe one version of it, with every path made of its edges.
+    @Test
+    void buildDuringConcurrentEdits() throws InterruptedException {
+        Random random = new Random(1);
+        ConcurrentGraph<Place> graph = new ConcurrentGraph<>();
+        List<Place> places = chain(graph, random);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            Random edits = new Random(2);
+            while(!stop.get()) {
+                int i = edits.nextInt(PLACES - 6);
+                Place from = places.get(i), to = places.get(i + 1 + edits.nextInt(5));
+                if(graph.getEdgeBetween(from, to) == null)
+                    graph.connect(from, to, "e", 1 + edits.nextInt(9));
+                else if(edits.nextBoolean())
+                    graph.disconnect(from, to);
+                else
+                    graph.setConnectionWeight(from, to, 1 + edits.nextInt(9));
+            }
+        });
+        writer.start();
+        try {
+            for (int round = 0; round < 5; round++) {
+                CsrGraph<Place> snapshot = new CsrGraph<>(graph);
+                ContractionHierarchy<Place> pinned = ContractionHierarchy.build(snapshot);
+                ContractionHierarchy<Place> live = ContractionHierarchy.build(graph);
+                for (int i = 0; i < 50; i++) {
+                    Place from = places.get(random.nextInt(PLACES)), to = places.get(random.nextInt(PLACES));
+                    assertEquals(weight(snapshot.getPath(from, to, PathMode.FASTEST)), weight(pinned.getPath(from, to)));
+                    List<Edge<Place>> path = live.getPath(from, to);
+                    if(path != null) {
+                        Place current = from;
+                        for (Edge<Place> e : path) {
+                            assertNotNull(e);
+                            current = e.getDestination();
+                        }
+                        assertEquals(to, current);
+                    }
+                }
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    void truncatedIndexIsAnIOException() throws IOException {
+        ListGraph<Place> graph = new ListGraph<>();
+        chain(graph, new Random(4));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContractionHierarchy.build(graph).write(out);
+        byte[] whole = out.toByteArray();
+
+        assertEquals(PLACES, ContractionHierarchy.read(new ByteArrayInputStream(whole), graph).size());
+        for (int length = 0; length < whole.length; length += 7) {
+            byte[] cut = Arrays.copyOf(whole, length);
+            assertThrows(IOException.class, () -> ContractionHierarchy.read(new ByteArrayInputStream(cut), graph));
+        }
+    }
+
+    private static long weight(List<Edge<Place>> path) {
+        if(path == null)
+            return -1;
+        long weight = 0;
+        for (Edge<Place> e : path)
+            weight += e.getWeight();
+        return weight;
+    }
+}
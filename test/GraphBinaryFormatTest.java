@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphBinaryFormatTest {
+
+    private static final GraphSink DISCARD = new GraphSink() {
+        @Override
+        public void image(String location) {
+        }
+
+        @Override
+        public void place(String name, double x, double y) {
+        }
+
+        @Override
+        public void connection(String from, String to, String name, int weight) {
+        }
+    };
+
+    @TempDir
+    Path directory;
+
+    private byte[] write() throws IOException {
+        GraphBinaryFormat.BinaryWriter writer = new GraphBinaryFormat.BinaryWriter();
+        writer.image("map.png");
+        for (int i = 0; i < 50; i++)
+            writer.place("p" + i, i, i);
+        for (int i = 1; i < 50; i++)
+            writer.connection("p0", "p" + i, "e" + i, i);
+        Path file = directory.resolve("whole" + GraphBinaryFormat.EXTENSION);
+        writer.writeTo(file);
+        return Files.readAllBytes(file);
+    }
+
+    @Test
+    void everyTruncationIsAnIOException() throws IOException {
+        byte[] whole = write();
+        Path file = directory.resolve("cut" + GraphBinaryFormat.EXTENSION);
+        for (int length = 0; length < whole.length; length++) {
+            Files.write(file, Arrays.copyOf(whole, length));
+            assertThrows(IOException.class, () -> GraphBinaryFormat.read(file, DISCARD), "length " + length);
+            assertThrows(IOException.class, () -> GraphBinaryFormat.readCopy(file, DISCARD), "length " + length);
+        }
+    }
+
+    // A corrupt file may still read, but must not fail in any other way.
+    @Test
+    void corruptCountsAreIOExceptions() throws IOException {
+        byte[] whole = write();
+        Path file = directory.resolve("corrupt" + GraphBinaryFormat.EXTENSION);
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            byte[] bytes = whole.clone();
+            ByteBuffer.wrap(bytes).putInt(8 + random.nextInt(bytes.length - 12), random.nextInt());
+            Files.write(file, bytes);
+            try {
+                GraphBinaryFormat.read(file, DISCARD);
+            } catch (IOException e) {
+                continue;
+            }
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        write();
+        List<String> connections = new ArrayList<>();
+        GraphBinaryFormat.read(directory.resolve("whole" + GraphBinaryFormat.EXTENSION), new GraphSink() {
+            @Override
+            public void image(String location) {
+                assertEquals("map.png", location);
+            }
+
+            @Override
+            public void place(String name, double x, double y) {
+            }
+
+            @Override
+            public void connection(String from, String to, String name, int weight) {
+                connections.add(from + "-" + to + ":" + weight);
+            }
+        });
+        assertEquals(49, connections.size());
+        assertEquals("p0-p7:7", connections.get(6));
+    }
+}
@@ -0,0 +1,66 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingServerTest {
+
+    private RoutingServer server;
+
+    @AfterEach
+    void stop() {
+        if(server != null)
+            server.stop();
+    }
+
+    // A graph whose shortest mode fails the way an unexpected bug would.
+    private static class FailingGraph extends ListGraph<Place> {
+        @Override
+        public List<Edge<Place>> getPath(Place from, Place to, PathMode mode) {
+            if(mode == PathMode.SHORTEST)
+                throw new IllegalStateException("broken");
+            return super.getPath(from, to, mode);
+        }
+    }
+
+    @Test
+    void failingLineDoesNotFailTheBatch() throws IOException, InterruptedException {
+        FailingGraph graph = new FailingGraph();
+        Place a = new Place("A", 0, 0), b = new Place("B", 1, 0);
+        graph.add(a);
+        graph.add(b);
+        graph.connect(a, b, "ab", 4);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RoutingServer(graph);
+        server.start(port);
+
+        String body = "exists;A;B\nroute;A;B;shortest\nnope\n;\nroute;A;B;fastest\n";
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/batch"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .timeout(Duration.ofSeconds(10))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        String json = response.body();
+        assertTrue(json.startsWith("[{\"exists\":true"), json);
+        assertTrue(json.contains("{\"error\":\"java.lang.IllegalStateException: broken\"}"), json);
+        assertTrue(json.contains("{\"error\":\"Not a query: nope\"}"), json);
+        assertTrue(json.contains("{\"error\":\"Not a query: ;\"}"), json);
+        assertTrue(json.endsWith("}]") && json.contains("\"found\":true"), json);
+    }
+}